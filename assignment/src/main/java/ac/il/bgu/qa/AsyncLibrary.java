@@ -0,0 +1,303 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.resilience.RetryPolicy;
+import ac.il.bgu.qa.services.AsyncDatabaseService;
+import ac.il.bgu.qa.services.AsyncNotificationService;
+import ac.il.bgu.qa.services.AsyncReviewService;
+import ac.il.bgu.qa.services.NotificationService;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking version of {@link Library}, for callers such as event loops that must never wait on I/O.
+ * Every operation validates its input like the blocking library and returns a future, which completes
+ * exceptionally with the same exceptions the blocking library would throw. Independent lookups run
+ * concurrently: for example, notifying a user fetches the book, the user and the reviews at the same time.
+ */
+public class AsyncLibrary {
+
+    // Service to interact with the database
+    private final AsyncDatabaseService databaseService;
+
+    // Service to fetch reviews for a book
+    private final AsyncReviewService reviewService;
+
+    // Runs the blocking notification services of users that do not provide a non-blocking one
+    private final Executor notificationExecutor;
+
+    // Decides how often and after which delay a failed notification is retried
+    private RetryPolicy retryPolicy = RetryPolicy.immediate(5);
+
+    // Schedules delayed retries, or null if the retry policy never waits
+    private ScheduledExecutorService retryScheduler;
+
+    /**
+     * Constructs a new AsyncLibrary.
+     *
+     * @param databaseService      The non-blocking database service.
+     * @param reviewService        The non-blocking review service.
+     * @param notificationExecutor The executor running the notification services of users, unless a user's
+     *                             notification service also implements {@link AsyncNotificationService}.
+     */
+    public AsyncLibrary(AsyncDatabaseService databaseService, AsyncReviewService reviewService, Executor notificationExecutor) {
+        this.databaseService = databaseService;
+        this.reviewService = reviewService;
+        this.notificationExecutor = notificationExecutor;
+    }
+
+    /**
+     * Sets the policy used to retry failed notifications. By default a notification is attempted
+     * up to 5 times without any delay. Configure this before the library is shared between threads.
+     *
+     * @param retryPolicy    The retry policy.
+     * @param retryScheduler The scheduler starting delayed retries, so no thread waits during the delay.
+     *                       May be null only if the policy never asks for a delay.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy, ScheduledExecutorService retryScheduler) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("Invalid retry policy.");
+        }
+        this.retryPolicy = retryPolicy;
+        this.retryScheduler = retryScheduler;
+    }
+
+    /**
+     * Adds a book to the library's collection.
+     *
+     * @param book The book to be added.
+     * @return A future completing once the book was added.
+     */
+    public CompletableFuture<Void> addBook(Book book) {
+        try {
+            Library.validateBook(book);
+        } catch (IllegalArgumentException e) {
+            return failed(e);
+        }
+
+        // If book already exists in the database, fail, otherwise add it.
+        return databaseService.getBookByISBN(book.getISBN()).thenCompose(existing -> {
+            if (existing != null) {
+                throw new IllegalArgumentException("Book already exists.");
+            }
+            return databaseService.addBook(book.getISBN(), book);
+        });
+    }
+
+    /**
+     * Registers a user with the library.
+     *
+     * @param user The user to be registered.
+     * @return A future completing once the user was registered.
+     */
+    public CompletableFuture<Void> registerUser(User user) {
+        try {
+            Library.validateUser(user);
+        } catch (IllegalArgumentException e) {
+            return failed(e);
+        }
+
+        // If a user with the given Id already exists, fail, otherwise register the user.
+        return databaseService.getUserById(user.getId()).thenCompose(existing -> {
+            if (existing != null) {
+                throw new IllegalArgumentException("User already exists.");
+            }
+            return databaseService.registerUser(user.getId(), user);
+        });
+    }
+
+    /**
+     * Borrows a book for a user. The book and the user are fetched concurrently.
+     * Like the blocking library, a missing book is reported before an invalid user Id.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return A future completing once the borrowing was recorded.
+     */
+    public CompletableFuture<Void> borrowBook(String ISBN, String userId) {
+        if (!Library.isISBNValid(ISBN)) {
+            return failed(new IllegalArgumentException("Invalid ISBN."));
+        }
+
+        // The user is only looked up if their Id is valid, but the Id is rejected only once the book was found.
+        boolean validUserId = UserId.isValid(userId);
+        CompletableFuture<Book> bookLookup = databaseService.getBookByISBN(ISBN);
+        CompletableFuture<User> userLookup = validUserId
+                ? databaseService.getUserById(userId) : CompletableFuture.completedFuture(null);
+        return bookLookup.thenCombine(userLookup, (book, user) -> {
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            } else if (!validUserId) {
+                throw new IllegalArgumentException("Invalid user Id.");
+            } else if (user == null) {
+                throw new UserNotRegisteredException("User not found!");
+            } else if (!book.tryBorrow(userId)) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+            return book;
+        }).thenCompose(book -> databaseService.borrowBook(ISBN, userId).whenComplete((ignored, error) -> {
+            // If the database rejects the borrowing, release the book again, unless someone else holds it by now.
+            if (error != null) {
+                book.tryReturn(userId);
+            }
+        }));
+    }
+
+    /**
+     * Returns a previously borrowed book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return A future completing once the return was recorded.
+     */
+    public CompletableFuture<Void> returnBook(String ISBN) {
+        if (!Library.isISBNValid(ISBN)) {
+            return failed(new IllegalArgumentException("Invalid ISBN."));
+        }
+
+        return databaseService.getBookByISBN(ISBN).thenCompose(book -> {
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            } else if (!book.tryReturn()) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+            return databaseService.returnBook(ISBN);
+        });
+    }
+
+    /**
+     * Notifies a user with the reviews of a specified book.
+     * The book, the user and the reviews are fetched concurrently.
+     *
+     * @param ISBN   The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A future completing once the notification was sent.
+     */
+    public CompletableFuture<Void> notifyUserWithBookReviews(String ISBN, String userId) {
+        if (!Library.isISBNValid(ISBN)) {
+            return failed(new IllegalArgumentException("Invalid ISBN."));
+        } else if (!UserId.isValid(userId)) {
+            return failed(new IllegalArgumentException("Invalid user Id."));
+        }
+        return sendBookReviews(ISBN, userId, databaseService.getBookByISBN(ISBN));
+    }
+
+    /**
+     * Fetches a book by its ISBN and notifies the user with its reviews.
+     * Like the blocking library, the future completes after the notification was attempted,
+     * and a failed notification does not fail the lookup.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be fetched.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return A future of the book with the given ISBN.
+     */
+    public CompletableFuture<Book> getBookByISBN(String ISBN, String userId) {
+        if (!Library.isISBNValid(ISBN)) {
+            return failed(new IllegalArgumentException("Invalid ISBN."));
+        } else if (!UserId.isValid(userId)) {
+            return failed(new IllegalArgumentException("Invalid user Id."));
+        }
+
+        return databaseService.getBookByISBN(ISBN).thenCompose(book -> {
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            } else if (book.isBorrowed()) {
+                throw new BookAlreadyBorrowedException("Book was already borrowed!");
+            }
+            // The notification is optional, so its outcome is ignored.
+            return sendBookReviews(ISBN, userId, CompletableFuture.completedFuture(book)).handle((ignored, error) -> book);
+        });
+    }
+
+    // Fetches the user and the reviews while the book is being looked up, then notifies the user.
+    // A missing book or user is reported before any failure of the reviews, whose result is then ignored.
+    private CompletableFuture<Void> sendBookReviews(String ISBN, String userId, CompletableFuture<Book> bookLookup) {
+        CompletableFuture<User> userLookup = databaseService.getUserById(userId);
+        CompletableFuture<List<String>> reviewsLookup = reviewService.getReviewsForBook(ISBN);
+
+        return bookLookup.thenCombine(userLookup, (book, user) -> {
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            } else if (user == null) {
+                throw new UserNotRegisteredException("User not found!");
+            }
+            return user;
+        }).thenCompose(user -> reviewsLookup.handle((reviews, error) -> {
+            // If there's an issue fetching the reviews, fail with a service unavailable exception.
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                if (cause instanceof ReviewException) {
+                    throw new ReviewServiceUnavailableException("Review service unavailable!");
+                }
+                throw new CompletionException(cause);
+            } else if (reviews == null || reviews.isEmpty()) {
+                throw new NoReviewsFoundException("No reviews found!");
+            }
+            return reviews;
+        }).thenCompose(reviews -> {
+            String message = "Reviews for '" + bookLookup.join().getTitle() + "':\n" + String.join("\n", reviews);
+            RetryPolicy policy = retryPolicy;
+            policy.onCall();
+            return sendNotification(policy, notificationServiceOf(user), user.getId(), message, 1);
+        }));
+    }
+
+    // Attempts to send a notification, retrying as allowed by the retry policy.
+    private CompletableFuture<Void> sendNotification(RetryPolicy policy, AsyncNotificationService service,
+                                                     String userId, String message, int attempt) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        service.notifyUser(userId, message).whenComplete((ignored, error) -> {
+            if (error == null) {
+                result.complete(null);
+            } else if (!(unwrap(error) instanceof NotificationException)) {
+                result.completeExceptionally(unwrap(error));
+            } else if (attempt < policy.getMaxAttempts() && policy.tryAcquireRetry()) {
+                Runnable retry = () -> sendNotification(policy, service, userId, message, attempt + 1)
+                        .whenComplete((retried, retryError) -> {
+                            if (retryError == null) {
+                                result.complete(null);
+                            } else {
+                                result.completeExceptionally(unwrap(retryError));
+                            }
+                        });
+                long delayMillis = policy.getDelayMillis(attempt);
+                if (delayMillis > 0 && retryScheduler != null) {
+                    retryScheduler.schedule(retry, delayMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    retry.run();
+                }
+            } else {
+                result.completeExceptionally(new NotificationException("Notification failed!"));
+            }
+        });
+        return result;
+    }
+
+    // Uses the user's notification service directly if it is non-blocking, otherwise runs it on the executor.
+    private AsyncNotificationService notificationServiceOf(User user) {
+        NotificationService service = user.getNotificationService();
+        if (service instanceof AsyncNotificationService) {
+            return (AsyncNotificationService) service;
+        }
+        return AsyncNotificationService.fromSync(service, notificationExecutor);
+    }
+
+    // Removes the CompletionException wrapping added by the stages of a future.
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    // Creates a future that has already failed with the given exception.
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+}
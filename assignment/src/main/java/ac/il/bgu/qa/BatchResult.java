@@ -0,0 +1,102 @@
+package ac.il.bgu.qa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the outcome of a bulk operation, such as adding many books at once.
+ * Every item of the batch is either accepted or reported as a failure with its reason,
+ * so one bad record does not prevent the rest of the batch from being processed.
+ *
+ * @param <T> The type of the items in the batch.
+ */
+public class BatchResult<T> {
+
+    // The items that were processed successfully.
+    private final List<T> accepted = new ArrayList<>();
+    // The items that were rejected, together with the reason for rejecting them.
+    private final List<Failure<T>> failures = new ArrayList<>();
+
+    /**
+     * Records an item that was processed successfully.
+     *
+     * @param item The accepted item.
+     */
+    void accept(T item) {
+        accepted.add(item);
+    }
+
+    /**
+     * Records an item that was rejected.
+     *
+     * @param item  The rejected item.
+     * @param cause The exception describing why the item was rejected.
+     */
+    void reject(T item, RuntimeException cause) {
+        failures.add(new Failure<>(item, cause));
+    }
+
+    /**
+     * Retrieves the items that were processed successfully.
+     *
+     * @return The accepted items.
+     */
+    public List<T> getAccepted() {
+        return Collections.unmodifiableList(accepted);
+    }
+
+    /**
+     * Retrieves the items that were rejected.
+     *
+     * @return The failures.
+     */
+    public List<Failure<T>> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * Checks whether every item of the batch was processed successfully.
+     *
+     * @return true if there are no failures, otherwise false.
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Represents a single rejected item of a batch.
+     *
+     * @param <T> The type of the rejected item.
+     */
+    public static class Failure<T> {
+
+        // The rejected item.
+        private final T item;
+        // The exception describing why the item was rejected.
+        private final RuntimeException cause;
+
+        Failure(T item, RuntimeException cause) {
+            this.item = item;
+            this.cause = cause;
+        }
+
+        /**
+         * Retrieves the rejected item.
+         *
+         * @return The item, which may be null if the batch contained a null entry.
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Retrieves the reason the item was rejected.
+         *
+         * @return The exception that would have been thrown for this item by the single-item operation.
+         */
+        public RuntimeException getCause() {
+            return cause;
+        }
+    }
+}
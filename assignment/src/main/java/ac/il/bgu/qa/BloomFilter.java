@@ -0,0 +1,145 @@
+package ac.il.bgu.qa;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter of long keys, such as packed ISBNs and user Ids.
+ * <p>
+ * {@link #mightContain(long)} never returns false for a key that was added, and returns true for a key that
+ * was never added with about the configured false-positive probability, as long as no more than the expected
+ * number of keys are added. Keys cannot be removed. Adding and checking keys never lock.
+ */
+public class BloomFilter {
+
+    // The largest number of bits, limited by the int index of the words.
+    private static final long MAX_BITS = (long) Integer.MAX_VALUE * Long.SIZE;
+
+    // The bits, 64 per word.
+    private final AtomicLongArray words;
+    // The number of bits.
+    private final long bitCount;
+    // The number of bits set for every key.
+    private final int hashCount;
+
+    /**
+     * Constructs a new BloomFilter sized for a number of keys and a false-positive probability.
+     *
+     * @param expectedInsertions       The number of keys expected to be added.
+     * @param falsePositiveProbability The probability that a key never added is reported as present,
+     *                                 e.g. 0.01 for 1%. Each halving costs about 1.44 more bits per key.
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        this(optimalBitCount(expectedInsertions, falsePositiveProbability), expectedInsertions);
+    }
+
+    private BloomFilter(long bitCount, long expectedInsertions) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Invalid expected number of insertions.");
+        } else if (bitCount <= 0 || bitCount > MAX_BITS) {
+            throw new IllegalArgumentException("Invalid number of bits.");
+        }
+        int wordCount = (int) ((bitCount + Long.SIZE - 1) / Long.SIZE);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * Long.SIZE;
+        this.hashCount = (int) Math.max(1, Math.min(30, Math.round((double) this.bitCount / expectedInsertions * Math.log(2))));
+    }
+
+    /**
+     * Creates a BloomFilter using a fixed amount of memory. The false-positive probability then
+     * follows from the number of keys added; see {@link #getExpectedFalsePositiveProbability(long)}.
+     *
+     * @param bitCount           The number of bits of the filter, rounded up to a multiple of 64. 8 bits take a byte.
+     * @param expectedInsertions The number of keys expected to be added, used to choose the number of hashes.
+     * @return The filter.
+     */
+    public static BloomFilter withBitCount(long bitCount, long expectedInsertions) {
+        return new BloomFilter(bitCount, expectedInsertions);
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param key The key.
+     */
+    public void put(long key) {
+        long hash1 = mix(key);
+        long hash2 = mix(hash1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a key might have been added.
+     *
+     * @param key The key.
+     * @return false if the key was definitely never added, true if it probably was.
+     */
+    public boolean mightContain(long key) {
+        long hash1 = mix(key);
+        long hash2 = mix(hash1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the number of bits of the filter.
+     *
+     * @return The number of bits, a multiple of 64.
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Retrieves the number of bits set for every key.
+     *
+     * @return The number of hashes.
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Estimates the false-positive probability after a number of keys were added.
+     *
+     * @param insertions The number of distinct keys added.
+     * @return The probability that a key never added is reported as present.
+     */
+    public double getExpectedFalsePositiveProbability(long insertions) {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions / bitCount), hashCount);
+    }
+
+    // The number of bits giving the false-positive probability for the number of keys, with the best number of hashes.
+    private static long optimalBitCount(long expectedInsertions, double falsePositiveProbability) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Invalid expected number of insertions.");
+        } else if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1)) {
+            throw new IllegalArgumentException("Invalid false-positive probability.");
+        }
+        double bits = -expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+        return (long) Math.min(Math.ceil(bits), MAX_BITS);
+    }
+
+    // Spreads the bits of a key, whose low digits alone would cluster (the finalizer of MurmurHash3).
+    private static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
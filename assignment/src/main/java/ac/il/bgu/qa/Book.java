@@ -1,5 +1,7 @@
 package ac.il.bgu.qa;
 
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 /**
  * Represents a book with its essential details and borrowing status.
  */
@@ -10,8 +12,16 @@ public class Book {
     private final String title;
     // The name of the author of the book.
     private final String author;
-    // Status to check if the book is currently borrowed or not.
-    private boolean isBorrowed;
+    // The Id of the current borrower, or null if the book is not borrowed.
+    // Updated with compare-and-set so concurrent borrowers cannot both succeed.
+    private volatile String borrowerId;
+
+    // Marks a book borrowed through borrow(), where the borrower is not known.
+    private static final String UNKNOWN_BORROWER = new String("");
+
+    // Atomically updates the borrowerId field without allocating an atomic wrapper per book.
+    private static final AtomicReferenceFieldUpdater<Book, String> BORROWER =
+            AtomicReferenceFieldUpdater.newUpdater(Book.class, String.class, "borrowerId");
 
     /**
      * Constructs a new Book object.
@@ -24,7 +34,7 @@ public class Book {
         this.ISBN = ISBN;
         this.title = title;
         this.author = author;
-        this.isBorrowed = false;
+        this.borrowerId = null;
     }
 
     // Getter methods
@@ -62,7 +72,61 @@ public class Book {
      * @return true if the book is borrowed, otherwise false.
      */
     public boolean isBorrowed() {
-        return isBorrowed;
+        return borrowerId != null;
+    }
+
+    /**
+     * Retrieves the Id of the user currently borrowing the book.
+     *
+     * @return The borrower's Id, or null if the book is not borrowed or was borrowed without one.
+     */
+    public String getBorrowerId() {
+        String current = borrowerId;
+        return current == UNKNOWN_BORROWER ? null : current;
+    }
+
+    /**
+     * Atomically marks the book as borrowed by the given user, if it is not borrowed already.
+     *
+     * @param userId The Id of the user borrowing the book.
+     * @return true if the book was borrowed by this call, false if it was already borrowed.
+     */
+    public boolean tryBorrow(String userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return BORROWER.compareAndSet(this, null, userId);
+    }
+
+    /**
+     * Atomically marks the book as returned, if it is currently borrowed.
+     *
+     * @return true if the book was returned by this call, false if it was not borrowed.
+     */
+    public boolean tryReturn() {
+        return BORROWER.getAndSet(this, null) != null;
+    }
+
+    /**
+     * Atomically marks the book as returned, if it is currently borrowed by the given user. Use this to undo
+     * a borrowing, so a book returned and borrowed by someone else in the meantime is left with its new borrower.
+     *
+     * @param expectedBorrower The Id of the user expected to hold the book.
+     * @return true if the book was returned by this call, false if it was not borrowed by that user.
+     */
+    public boolean tryReturn(String expectedBorrower) {
+        if (expectedBorrower == null) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        // Compare the Ids by value, then clear the exact reference read, so a concurrent change is not overwritten.
+        String current;
+        do {
+            current = borrowerId;
+            if (current == UNKNOWN_BORROWER || !expectedBorrower.equals(current)) {
+                return false;
+            }
+        } while (!BORROWER.compareAndSet(this, current, null));
+        return true;
     }
 
     /**
@@ -70,9 +134,7 @@ public class Book {
      * Throws an exception if the book is already borrowed.
      */
     public void borrow() {
-        if (!isBorrowed) {
-            isBorrowed = true;
-        } else {
+        if (!BORROWER.compareAndSet(this, null, UNKNOWN_BORROWER)) {
             throw new IllegalStateException("Book is already borrowed!");
         }
     }
@@ -82,9 +144,7 @@ public class Book {
      * Throws an exception if the book was not previously borrowed.
      */
     public void returnBook() {
-        if (isBorrowed) {
-            isBorrowed = false;
-        } else {
+        if (!tryReturn()) {
             throw new IllegalStateException("ac.il.bgu.qa.Book wasn't borrowed!");
         }
     }
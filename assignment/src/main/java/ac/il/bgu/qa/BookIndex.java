@@ -0,0 +1,126 @@
+package ac.il.bgu.qa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary indexes over the books of a library, answering catalog searches without scanning the database.
+ * Books are indexed by author in a hash index and by title in a sorted index, both on a normalized form
+ * that ignores case and redundant whitespace. The indexes are thread-safe and updated incrementally
+ * as books are added.
+ */
+final class BookIndex {
+
+    // Separates the title from the ISBN in the keys of the title index, and sorts before any other character.
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    // The books of every normalized author name, sorted by ISBN.
+    private final ConcurrentMap<String, ConcurrentNavigableMap<String, Book>> byAuthor = new ConcurrentHashMap<>();
+
+    // The books sorted by normalized title, keyed by the title followed by the ISBN, as titles are not unique.
+    private final ConcurrentNavigableMap<String, Book> byTitle = new ConcurrentSkipListMap<>();
+
+    /**
+     * Adds a book to the indexes. Adding a book again has no effect.
+     *
+     * @param book The book to be indexed.
+     */
+    void add(Book book) {
+        String ISBN = book.getISBN();
+        byTitle.put(normalize(book.getTitle()) + KEY_SEPARATOR + ISBN, book);
+        byAuthor.computeIfAbsent(normalize(book.getAuthor()), author -> new ConcurrentSkipListMap<>()).put(ISBN, book);
+    }
+
+    /**
+     * Adds many books to the indexes.
+     *
+     * @param books The books to be indexed.
+     */
+    void addAll(Collection<Book> books) {
+        for (Book book : books) {
+            add(book);
+        }
+    }
+
+    /**
+     * Finds the books of an author, ignoring case and redundant whitespace.
+     *
+     * @param author The name of the author.
+     * @return The books of the author sorted by ISBN, or an empty list if there are none.
+     */
+    List<Book> findByAuthor(String author) {
+        Map<String, Book> books = byAuthor.get(normalize(author));
+        return books == null ? new ArrayList<>() : new ArrayList<>(books.values());
+    }
+
+    /**
+     * Finds the books whose title starts with a prefix, ignoring case and redundant whitespace.
+     * Trailing whitespace ends a word: "The " finds "The Hobbit" and "The", but not "Theory".
+     *
+     * @param prefix The beginning of the title.
+     * @return The matching books sorted by title, or an empty list if there are none.
+     */
+    List<Book> findByTitlePrefix(String prefix) {
+        String normalized = normalize(prefix);
+        if (prefix.isEmpty() || !Character.isWhitespace(prefix.charAt(prefix.length() - 1))) {
+            return findByKeyPrefix(normalized);
+        }
+        // Titles ending with the word come first, as the separator sorts before the space.
+        List<Book> books = findByKeyPrefix(normalized + KEY_SEPARATOR);
+        books.addAll(findByKeyPrefix(normalized + ' '));
+        return books;
+    }
+
+    // Finds the books whose key in the title index starts with a prefix, sorted by title.
+    private List<Book> findByKeyPrefix(String prefix) {
+        List<Book> books = new ArrayList<>();
+        for (Map.Entry<String, Book> entry : byTitle.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            books.add(entry.getValue());
+        }
+        return books;
+    }
+
+    /**
+     * Retrieves the number of indexed books.
+     *
+     * @return The number of books.
+     */
+    int size() {
+        return byTitle.size();
+    }
+
+    /**
+     * Normalizes a search term: surrounding whitespace is removed, inner whitespace is collapsed
+     * to single spaces and letters are lower-cased.
+     *
+     * @param term The term to be normalized.
+     * @return The normalized term.
+     */
+    static String normalize(String term) {
+        StringBuilder normalized = new StringBuilder(term.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+}
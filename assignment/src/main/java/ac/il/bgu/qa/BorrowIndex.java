@@ -0,0 +1,105 @@
+package ac.il.bgu.qa;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A reverse index from every user to the books they currently hold, so a user's borrowed books
+ * are found without scanning the borrow ledger. The index is only changed once the database accepted
+ * a borrowing or a return, so it follows the database even when the database hands out a new
+ * {@link Book} on every lookup. Books are keyed by the numeric value of their ISBN, so a book borrowed
+ * with one spelling of its ISBN and returned with another is the same entry.
+ */
+final class BorrowIndex {
+
+    // The numeric Id of the borrower of every borrowed book, keyed by the numeric ISBN.
+    private final ConcurrentMap<Long, Long> borrowers = new ConcurrentHashMap<>();
+
+    // The books held by every user, keyed by the numeric user Id. Every book maps its numeric ISBN
+    // to the ISBN as it was given when borrowing, which is how the database knows the book.
+    private final ConcurrentMap<Long, ConcurrentMap<Long, String>> borrowed = new ConcurrentHashMap<>();
+
+    /**
+     * Records a book borrowed by a user. Call this only once the database recorded the borrowing,
+     * or for a book the database already lists as borrowed. A different borrower still recorded
+     * for the book is stale, since the database accepted the new one, and is forgotten.
+     *
+     * @param ISBN   The valid International Standard Book Number of the book.
+     * @param userId The valid Id of the user holding the book.
+     */
+    void record(String ISBN, String userId) {
+        long user = UserId.toLong(userId);
+        borrowers.compute(IsbnValidator.toLong(ISBN), (key, current) -> {
+            if (current != null && current != user) {
+                remove(current, key);
+            }
+            add(user, key, ISBN);
+            return user;
+        });
+    }
+
+    /**
+     * Forgets a returned book. Call this only once the database recorded the return. If the book is recorded
+     * for another user than the one who returned it, it was borrowed again in the meantime and is kept.
+     *
+     * @param ISBN   The valid International Standard Book Number of the book.
+     * @param userId The valid Id of the user who returned the book, or null if unknown.
+     */
+    void forget(String ISBN, String userId) {
+        long user = userId == null ? -1 : UserId.toLong(userId);
+        borrowers.computeIfPresent(IsbnValidator.toLong(ISBN), (key, current) -> {
+            if (user >= 0 && current != user) {
+                return current;
+            }
+            remove(current, key);
+            return null;
+        });
+    }
+
+    /**
+     * Retrieves the ISBNs of the books a user currently holds.
+     *
+     * @param userId The numeric Id of the user.
+     * @return The ISBNs as given when borrowing, in ascending numeric order, or an empty set if the user holds no books.
+     */
+    Set<String> getBorrowedISBNs(long userId) {
+        Map<Long, String> books = borrowed.get(userId);
+        return books == null ? Collections.<String>emptySet() : new LinkedHashSet<>(new TreeMap<>(books).values());
+    }
+
+    /**
+     * Counts the books a user currently holds.
+     *
+     * @param userId The numeric Id of the user.
+     * @return The number of borrowed books.
+     */
+    int countBorrowed(long userId) {
+        Map<Long, String> books = borrowed.get(userId);
+        return books == null ? 0 : books.size();
+    }
+
+    // Adds a book to the books held by a user. Called under the lock of the book's ISBN, and adds the book
+    // under the lock of the user, so it cannot land in a map that is concurrently dropped.
+    private void add(long userId, long key, String ISBN) {
+        borrowed.compute(userId, (id, books) -> {
+            if (books == null) {
+                books = new ConcurrentHashMap<>();
+            }
+            books.put(key, ISBN);
+            return books;
+        });
+    }
+
+    // Removes a book from the books held by a user, dropping the user once they hold none.
+    private void remove(long userId, long key) {
+        borrowed.computeIfPresent(userId, (id, books) -> {
+            books.remove(key);
+            return books.isEmpty() ? null : books;
+        });
+    }
+}
@@ -0,0 +1,97 @@
+package ac.il.bgu.qa;
+
+/**
+ * Validates International Standard Book Numbers of type ISBN-13.
+ * Hyphens are ignored, every other character must be a digit, and the last digit must match
+ * the ISBN-13 check digit. Validation is a single pass over the characters and allocates nothing.
+ */
+public final class IsbnValidator {
+
+    // The number of digits in an ISBN-13.
+    private static final int ISBN_LENGTH = 13;
+
+    private IsbnValidator() {
+    }
+
+    /**
+     * Validates if input is of type ISBN-13.
+     *
+     * @param isbn The International Standard Book Number to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValid(String isbn) {
+        return isValid((CharSequence) isbn);
+    }
+
+    /**
+     * Validates if a sequence of characters is of type ISBN-13.
+     *
+     * @param isbn The characters of the International Standard Book Number to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValid(CharSequence isbn) {
+        return toLong(isbn) >= 0;
+    }
+
+    /**
+     * Validates an ISBN-13 and packs its 13 digits into a long, ignoring hyphens.
+     * Hyphenated and plain forms of the same ISBN are packed to the same value.
+     *
+     * @param isbn The characters of the International Standard Book Number to be packed.
+     * @return The digits of the ISBN as a number, or -1 if the ISBN is invalid.
+     */
+    public static long toLong(CharSequence isbn) {
+        // Check if the ISBN is null, return -1 if it is
+        if (isbn == null) {
+            return -1;
+        }
+
+        // Calculate the sum based on the ISBN-13 rules while skipping hyphens:
+        // Odd position numbers are multiplied by 1
+        // Even position numbers are multiplied by 3
+        int sum = 0;
+        int digits = 0;
+        int lastDigit = 0;
+        long value = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9' || digits == ISBN_LENGTH) {
+                return -1;
+            }
+            lastDigit = c - '0';
+            value = value * 10 + lastDigit;
+            if (digits < ISBN_LENGTH - 1) {
+                sum += (digits & 1) == 0 ? lastDigit : lastDigit * 3;
+            }
+            digits++;
+        }
+
+        // Check if the sanitized ISBN is of length 13
+        if (digits != ISBN_LENGTH) {
+            return -1;
+        }
+
+        // Calculate the check digit and compare it with the last digit of the ISBN
+        int checkDigit = (10 - (sum % 10)) % 10;
+        return checkDigit == lastDigit ? value : -1;
+    }
+
+    /**
+     * Formats an ISBN packed by {@link #toLong(CharSequence)} back to its 13 digits, without hyphens.
+     *
+     * @param isbn The packed ISBN.
+     * @return The 13 digits of the ISBN, including leading zeros.
+     */
+    public static String toString(long isbn) {
+        char[] digits = new char[ISBN_LENGTH];
+        long remaining = isbn;
+        for (int i = ISBN_LENGTH - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + (remaining % 10));
+            remaining /= 10;
+        }
+        return new String(digits);
+    }
+}
@@ -1,10 +1,17 @@
 package ac.il.bgu.qa;
 
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.events.LibraryEvent;
+import ac.il.bgu.qa.events.LibraryEventListener;
+import ac.il.bgu.qa.metrics.LibraryMetrics;
+import ac.il.bgu.qa.metrics.LibraryMetrics.Operation;
+import ac.il.bgu.qa.resilience.RetryPolicy;
 import ac.il.bgu.qa.services.DatabaseService;
 import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ReviewServicePool;
 
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * Represents a library which manages a collection of books and users.
@@ -14,13 +21,144 @@ public class Library {
     // Service to interact with the database
     private final DatabaseService databaseService;
 
-    // Service to fetch reviews for a book
-    private final ReviewService reviewService;
+    // Pool of services to fetch reviews for a book
+    private final ReviewServicePool reviewServicePool;
 
-    // Constructor for Library, initializes both services
+    // Indexes the books added through this library by author and by title, for catalog searches
+    private final BookIndex bookIndex = new BookIndex();
+
+    // Indexes the books borrowed through this library by their borrower
+    private final BorrowIndex borrowIndex = new BorrowIndex();
+
+    // Decides how often and after which delay a failed notification is retried
+    private RetryPolicy retryPolicy = RetryPolicy.immediate(5);
+
+    // Runs the optional review notification of getBookByISBN in the background, or null to run it inline
+    private NotificationDispatcher notificationDispatcher;
+
+    // The maximum number of reviews and characters in the notification of a book's reviews, or 0 for no limit
+    private int maxReviewsPerNotification;
+    private int maxCharsPerNotification;
+
+    // Receives the latency and outcome of every operation, by default recording nothing
+    private LibraryMetrics metrics = LibraryMetrics.noop();
+
+    // Receives the retried and skipped notifications, by default written to the console in the background
+    private LibraryEventListener eventListener = LibraryEventListener.console();
+
+    // Tell which books and users were never stored, so looking them up skips the database, or null to always look up
+    private BloomFilter bookFilter;
+    private BloomFilter userFilter;
+
+    // Constructor for Library, initializes both services.
+    // The review service is closed after every fetch; use a ReviewServicePool to reuse connections instead.
     public Library(DatabaseService databaseService, ReviewService reviewService) {
+        this(databaseService, ReviewServicePool.unpooled(reviewService));
+    }
+
+    // Constructor for Library, leasing review services from a pool for every fetch
+    public Library(DatabaseService databaseService, ReviewServicePool reviewServicePool) {
         this.databaseService = databaseService;
-        this.reviewService = reviewService;
+        this.reviewServicePool = reviewServicePool;
+    }
+
+    /**
+     * Sets the policy used to retry failed notifications. By default a notification is attempted
+     * up to 5 times without any delay. Configure this before the library is shared between threads.
+     *
+     * @param retryPolicy The retry policy, e.g. an {@link ac.il.bgu.qa.resilience.ExponentialBackoffRetryPolicy}.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("Invalid retry policy.");
+        }
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the dispatcher running the review notification sent by {@link #getBookByISBN(String, String)}.
+     * With a dispatcher, the book is returned as soon as it is fetched from the database, and the notification
+     * is sent in the background (or dropped if the dispatcher is saturated). Without one, the notification is
+     * sent before the book is returned. Configure this before the library is shared between threads.
+     *
+     * @param notificationDispatcher The dispatcher to be used, or null to notify synchronously.
+     */
+    public void setNotificationDispatcher(NotificationDispatcher notificationDispatcher) {
+        this.notificationDispatcher = notificationDispatcher;
+    }
+
+    /**
+     * Limits the size of the notification sent with the reviews of a single book. With limits, the reviews
+     * are read one by one and only those fitting in the notification are kept, and the notification is
+     * written to the user's notification service piece by piece; reviews left out are marked with a "..."
+     * line. Without limits, all the reviews are sent in one String. Configure this before the library is
+     * shared between threads.
+     * <p>
+     * Memory stays bounded only if the review service streams its reviews by overriding
+     * {@link ReviewService#iterateReviewsForBook(String)}. Otherwise, and behind a
+     * {@link ac.il.bgu.qa.services.CachingReviewService CachingReviewService} or a
+     * {@link ac.il.bgu.qa.services.SingleFlightReviewService SingleFlightReviewService}, which need the whole
+     * list to cache or share it, all the reviews of the book are still fetched into memory, and only the
+     * notification is bounded.
+     *
+     * @param maxReviews The maximum number of reviews in a notification.
+     * @param maxChars   The maximum number of characters in a notification, the line naming the book included.
+     */
+    public void setNotificationLimits(int maxReviews, int maxChars) {
+        if (maxReviews <= 0) {
+            throw new IllegalArgumentException("Invalid maximum of reviews.");
+        } else if (maxChars <= 0) {
+            throw new IllegalArgumentException("Invalid maximum of characters.");
+        }
+        this.maxReviewsPerNotification = maxReviews;
+        this.maxCharsPerNotification = maxChars;
+    }
+
+    /**
+     * Sets the metrics receiving the latency and outcome of the library's operations, the retries of failed
+     * notifications and the latency of the fetches from the review service. By default nothing is recorded.
+     * Configure this before the library is shared between threads.
+     *
+     * @param metrics The metrics, e.g. an {@link ac.il.bgu.qa.metrics.InMemoryLibraryMetrics}.
+     */
+    public void setMetrics(LibraryMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Invalid metrics.");
+        }
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the listener receiving the events of the library, such as retried notifications and optional
+     * notifications that failed. The listener is called on the caller's thread, so it must not block.
+     * By default the events are written to the standard error stream by a background thread, and dropped
+     * rather than delaying callers when they arrive too fast. Configure this before the library is shared between threads.
+     *
+     * @param eventListener The listener, e.g. an {@link ac.il.bgu.qa.events.AsyncLibraryEventListener}.
+     */
+    public void setEventListener(LibraryEventListener eventListener) {
+        if (eventListener == null) {
+            throw new IllegalArgumentException("Invalid event listener.");
+        }
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * Sets the filters holding the ISBNs of the books and the Ids of the users stored in the database.
+     * A book or user that a filter reports as never stored is treated as not found without querying the database,
+     * which saves a round trip for every lookup of an unknown ISBN or Id. Books and users added through the library
+     * are added to the filters automatically; those already stored, borrowed books included, must be added with
+     * {@link #indexBooks(Collection)} and {@link #indexUsers(Collection)} before the library is used, or they would
+     * not be found. The checks made before adding a book or registering a user always query the database, so an
+     * unindexed book or user is rejected as already existing rather than overwritten.
+     * Configure this before the library is shared between threads.
+     *
+     * @param bookFilter The filter of the books, sized for the expected number of books, or null to always query the database.
+     * @param userFilter The filter of the users, sized for the expected number of users, or null to always query the database.
+     */
+    public void setMembershipFilters(BloomFilter bookFilter, BloomFilter userFilter) {
+        this.bookFilter = bookFilter;
+        this.userFilter = userFilter;
     }
 
     /**
@@ -29,68 +167,236 @@ public class Library {
      * @param book The book to be added.
      */
     public void addBook(Book book) {
-        // Multiple checks to validate the book object's properties
-        if (book == null) {
-            throw new IllegalArgumentException("Invalid book.");
-        } else if (!isISBNValid(book.getISBN())){
-            throw new IllegalArgumentException("Invalid ISBN.");
-        } else if (book.getTitle() == null || book.getTitle().equals("")) {
-            throw new IllegalArgumentException("Invalid title.");
-        } else if (!isAuthorValid(book.getAuthor())) {
-            throw new IllegalArgumentException("Invalid author.");
-        } else if (book.isBorrowed()) {
-            throw new IllegalArgumentException("Book with invalid borrowed state.");
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            // Multiple checks to validate the book object's properties
+            validateBook(book);
+
+            // If book already exists in the database, throw exception.
+            // The filter is not consulted, so a stored book missing from it is never overwritten.
+            if (databaseService.getBookByISBN(book.getISBN()) != null)
+                throw new IllegalArgumentException("Book already exists.");
+
+            // If all checks pass, add the book to the database.
+            // It is added to the filter first, so it is never reported as missing once stored.
+            if (bookFilter != null) {
+                bookFilter.put(IsbnValidator.toLong(book.getISBN()));
+            }
+            databaseService.addBook(book.getISBN(), book);
+
+            // Make the book findable by the catalog searches.
+            bookIndex.add(book);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.ADD_BOOK, start, failure);
         }
+    }
 
-        // If book already exists in the database, throw exception
-        if (databaseService.getBookByISBN(book.getISBN()) != null)
-            throw new IllegalArgumentException("Book already exists.");
+    /**
+     * Adds many books to the library's collection, as done by bulk catalog imports.
+     * Every book is validated like in {@link #addBook(Book)}, but an invalid or already existing book
+     * is reported in the result instead of stopping the import. The existence check and the insertion
+     * are each done with a single call to the database.
+     *
+     * @param books The books to be added.
+     * @return The books that were added and the books that were rejected, with the reason for each.
+     */
+    public BatchResult<Book> addBooks(Collection<Book> books) {
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            if (books == null) {
+                throw new IllegalArgumentException("Invalid books.");
+            }
 
-        // If all checks pass, add the book to the database
-        databaseService.addBook(book.getISBN(), book);
+            BatchResult<Book> result = new BatchResult<>();
+
+            // Validate every book, keeping the first book for each ISBN in the batch.
+            Map<String, Book> candidates = new LinkedHashMap<>();
+            for (Book book : books) {
+                try {
+                    validateBook(book);
+                } catch (IllegalArgumentException e) {
+                    result.reject(book, e);
+                    continue;
+                }
+                if (candidates.putIfAbsent(book.getISBN(), book) != null) {
+                    result.reject(book, new IllegalArgumentException("Book already exists."));
+                }
+            }
+
+            // Reject the books that already exist in the database.
+            if (!candidates.isEmpty()) {
+                Map<String, Book> existing = databaseService.getBooksByISBN(candidates.keySet());
+                for (String ISBN : existing.keySet()) {
+                    Book rejected = candidates.remove(ISBN);
+                    if (rejected != null) {
+                        result.reject(rejected, new IllegalArgumentException("Book already exists."));
+                    }
+                }
+            }
+
+            // Add all the remaining books to the database at once.
+            if (!candidates.isEmpty()) {
+                addBooksToFilter(candidates.keySet());
+                databaseService.addBooks(candidates);
+                bookIndex.addAll(candidates.values());
+                for (Book book : candidates.values()) {
+                    result.accept(book);
+                }
+            }
+            return result;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.ADD_BOOKS, start, failure);
+        }
     }
 
     /**
-     *  Validates if input is of type ISBN-13.
+     * Makes books that are already stored in the database findable by the catalog searches and adds them to the
+     * membership filter, for example when a library is started on an existing database. Books added through
+     * the library are indexed automatically and do not need this. Unlike added books, indexed books may be borrowed:
+     * a book whose borrower is known is then counted among the books its borrower holds, see
+     * {@link #getBorrowedBooks(String)}.
      *
-     *  @param isbn The International Standard Book Number to be validated.
-     *  @return true if valid, false otherwise.
-    */
-    private boolean isISBNValid(String isbn) {
-        // Check if the ISBN is null, return false if it is
-        if (isbn == null) {
-            return false;
+     * @param books The books to be indexed.
+     */
+    public void indexBooks(Collection<Book> books) {
+        if (books == null) {
+            throw new IllegalArgumentException("Invalid books.");
+        }
+        for (Book book : books) {
+            validateStoredBook(book);
+        }
+        if (bookFilter != null) {
+            for (Book book : books) {
+                bookFilter.put(IsbnValidator.toLong(book.getISBN()));
+            }
         }
+        bookIndex.addAll(books);
 
-        // Remove any hyphen characters from the ISBN for standardization
-        isbn = isbn.replaceAll("-", "");
+        // Restore the books held by every user, which are otherwise only known for books borrowed through this library.
+        for (Book book : books) {
+            String borrowerId = book.getBorrowerId();
+            if (borrowerId != null && UserId.isValid(borrowerId)) {
+                borrowIndex.record(book.getISBN(), borrowerId);
+            }
+        }
+    }
 
-        // Check if the sanitized ISBN is of length 13 and if contains only digits
-        if (isbn.length() != 13 || !isbn.matches("\\d+")) {
-            return false;
+    /**
+     * Adds users that are already registered in the database to the membership filter, for example when
+     * a library is started on an existing database. Users registered through the library are added
+     * automatically and do not need this.
+     *
+     * @param users The users to be indexed.
+     */
+    public void indexUsers(Collection<User> users) {
+        if (users == null) {
+            throw new IllegalArgumentException("Invalid users.");
+        }
+        for (User user : users) {
+            validateUser(user);
+        }
+        if (userFilter != null) {
+            for (User user : users) {
+                userFilter.put(UserId.toLong(user.getId()));
+            }
         }
+    }
 
-        // Calculate the sum based on the ISBN-13 rules:
-        // Odd position numbers are multiplied by 1
-        // Even position numbers are multiplied by 3
-        int sum = 0;
-        for (int i = 0; i < 12; i++) {
-            int digit = Integer.parseInt(String.valueOf(isbn.charAt(i)));
-            if (i % 2 == 0) {
-                sum += digit;
-            } else {
-                sum += digit * 3;
+    /**
+     * Finds the books of an author. The search ignores case and redundant whitespace,
+     * and is answered from an in-memory index without querying the database.
+     *
+     * @param author The name of the author.
+     * @return The books of the author sorted by ISBN, or an empty list if there are none.
+     */
+    public List<Book> findBooksByAuthor(String author) {
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            if (author == null || author.trim().isEmpty()) {
+                throw new IllegalArgumentException("Invalid author.");
             }
+            return bookIndex.findByAuthor(author);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.FIND_BOOKS_BY_AUTHOR, start, failure);
         }
+    }
 
-        // Calculate the check digit
-        int checkDigit = 10 - (sum % 10);
-        if (checkDigit == 10) {
-            checkDigit = 0;
+    /**
+     * Finds the books whose title starts with a prefix. The search ignores case and redundant whitespace,
+     * and is answered from an in-memory index without querying the database. A prefix ending with whitespace
+     * only matches whole words, e.g. "The " matches "The Hobbit" but not "Theory".
+     *
+     * @param prefix The beginning of the title.
+     * @return The matching books sorted by title, or an empty list if there are none.
+     */
+    public List<Book> findBooksByTitlePrefix(String prefix) {
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            if (prefix == null || prefix.trim().isEmpty()) {
+                throw new IllegalArgumentException("Invalid title prefix.");
+            }
+            return bookIndex.findByTitlePrefix(prefix);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.FIND_BOOKS_BY_TITLE_PREFIX, start, failure);
         }
+    }
+
+    /**
+     * Validates the properties of a book that is about to be added.
+     *
+     * @param book The book to be validated.
+     * @throws IllegalArgumentException If any property of the book is invalid.
+     */
+    static void validateBook(Book book) {
+        validateStoredBook(book);
+        if (book.isBorrowed()) {
+            throw new IllegalArgumentException("Book with invalid borrowed state.");
+        }
+    }
+
+    /**
+     * Validates the properties of a book that is already stored in the database, which may be borrowed.
+     *
+     * @param book The book to be validated.
+     * @throws IllegalArgumentException If the ISBN, title or author of the book is invalid.
+     */
+    static void validateStoredBook(Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        } else if (!isISBNValid(book.getISBN())){
+            throw new IllegalArgumentException("Invalid ISBN.");
+        } else if (book.getTitle() == null || book.getTitle().equals("")) {
+            throw new IllegalArgumentException("Invalid title.");
+        } else if (!isAuthorValid(book.getAuthor())) {
+            throw new IllegalArgumentException("Invalid author.");
+        }
+    }
 
-        // Check if the calculated check digit matches the last digit of the ISBN
-        return checkDigit == Integer.parseInt(String.valueOf(isbn.charAt(12)));
+    /**
+     *  Validates if input is of type ISBN-13.
+     *
+     *  @param isbn The International Standard Book Number to be validated.
+     *  @return true if valid, false otherwise.
+    */
+    static boolean isISBNValid(String isbn) {
+        // Delegate to the single-pass validator, which avoids regex and String allocations.
+        return IsbnValidator.isValid(isbn);
     }
 
     /**
@@ -99,7 +405,7 @@ public class Library {
      *  @param name The name of the author.
      *  @return true if valid, false otherwise.
     */
-    private boolean isAuthorValid(String name) {
+    private static boolean isAuthorValid(String name) {
         /*
          * Three key criteria for a valid author name:
          * 1) The name should only consist of alphabetic characters, hyphens, spaces, dots, and apostrophes.
@@ -145,24 +451,108 @@ public class Library {
      * @param user The user to be registered.
      */
     public void registerUser(User user) {
-        // Multiple checks to validate the user object's properties.
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            // Multiple checks to validate the user object's properties.
+            validateUser(user);
+
+            // Before registering, check if a user with the given Id already exists.
+            // If such a user is found, throw an exception.
+            if (databaseService.getUserById(user.getId()) != null)
+                throw new IllegalArgumentException("User already exists.");
+
+            // If all checks have passed, call the database service to register the user.
+            // The user is added to the filter first, so they are never reported as missing once registered.
+            if (userFilter != null) {
+                userFilter.put(UserId.toLong(user.getId()));
+            }
+            databaseService.registerUser(user.getId(), user);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.REGISTER_USER, start, failure);
+        }
+    }
+
+    /**
+     * Registers many users with the library, as done by bulk member imports.
+     * Every user is validated like in {@link #registerUser(User)}, but an invalid or already registered user
+     * is reported in the result instead of stopping the import. The existence check and the registration
+     * are each done with a single call to the database.
+     *
+     * @param users The users to be registered.
+     * @return The users that were registered and the users that were rejected, with the reason for each.
+     */
+    public BatchResult<User> registerUsers(Collection<User> users) {
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            if (users == null) {
+                throw new IllegalArgumentException("Invalid users.");
+            }
+
+            BatchResult<User> result = new BatchResult<>();
+
+            // Validate every user, keeping the first user for each Id in the batch.
+            Map<String, User> candidates = new LinkedHashMap<>();
+            for (User user : users) {
+                try {
+                    validateUser(user);
+                } catch (IllegalArgumentException e) {
+                    result.reject(user, e);
+                    continue;
+                }
+                if (candidates.putIfAbsent(user.getId(), user) != null) {
+                    result.reject(user, new IllegalArgumentException("User already exists."));
+                }
+            }
+
+            // Reject the users that are already registered in the database.
+            if (!candidates.isEmpty()) {
+                Map<String, User> existing = databaseService.getUsersById(candidates.keySet());
+                for (String id : existing.keySet()) {
+                    User rejected = candidates.remove(id);
+                    if (rejected != null) {
+                        result.reject(rejected, new IllegalArgumentException("User already exists."));
+                    }
+                }
+            }
+
+            // Register all the remaining users in the database at once.
+            if (!candidates.isEmpty()) {
+                addUsersToFilter(candidates.keySet());
+                databaseService.registerUsers(candidates);
+                for (User user : candidates.values()) {
+                    result.accept(user);
+                }
+            }
+            return result;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.REGISTER_USERS, start, failure);
+        }
+    }
+
+    /**
+     * Validates the properties of a user that is about to be registered.
+     *
+     * @param user The user to be validated.
+     * @throws IllegalArgumentException If any property of the user is invalid.
+     */
+    static void validateUser(User user) {
         if (user == null) {
             throw new IllegalArgumentException("Invalid user.");
-        } else if (user.getId() == null || !user.getId().matches("\\d{12}")) {
+        } else if (user.getId() == null || !UserId.isValid(user.getId())) {
             throw new IllegalArgumentException("Invalid user Id.");
         } else if (user.getName() == null || user.getName().equals("")) {
             throw new IllegalArgumentException("Invalid user name.");
         } else if (user.getNotificationService() == null) {
             throw new IllegalArgumentException("Invalid notification service.");
         }
-
-        // Before registering, check if a user with the given Id already exists.
-        // If such a user is found, throw an exception.
-        if (databaseService.getUserById(user.getId()) != null)
-            throw new IllegalArgumentException("User already exists.");
-
-        // If all checks have passed, call the database service to register the user.
-        databaseService.registerUser(user.getId(), user);
     }
 
 
@@ -173,42 +563,59 @@ public class Library {
      * @param userId The Id of the user borrowing the book.
      */
     public void borrowBook(String ISBN, String userId) {
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            // Validate the ISBN. If it's invalid, throw an exception.
+            if (!isISBNValid(ISBN)) {
+                throw new IllegalArgumentException("Invalid ISBN.");
+            }
 
-        // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
-        }
-
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+            // Retrieve the book associated with the ISBN from the database.
+            Book book = findBook(ISBN);
 
-        // If no book is found for the given ISBN, throw an exception.
-        if (book == null) {
-            throw new BookNotFoundException("Book not found!");
-        }
+            // If no book is found for the given ISBN, throw an exception.
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
 
-        // Validate the user Id's format (should be a 12-digit number).
-        // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
-        }
+            // Validate the user Id's format (should be a 12-digit number).
+            // If it's invalid, throw an exception.
+            if (!UserId.isValid(userId)) {
+                throw new IllegalArgumentException("Invalid user Id.");
+            }
 
-        // Check if the user Id's corresponds to a registered user in the database.
-        // If not, throw an exception indicating the user is not registered.
-        if (databaseService.getUserById(userId) == null) {
-            throw new UserNotRegisteredException("User not found!");
-        }
+            // Check if the user Id's corresponds to a registered user in the database.
+            // If not, throw an exception indicating the user is not registered.
+            if (findUser(userId) == null) {
+                throw new UserNotRegisteredException("User not found!");
+            }
 
-        // If the book is already borrowed, throw an exception.
-        if (book.isBorrowed()) {
-            throw new BookAlreadyBorrowedException("Book is already borrowed!");
-        }
+            // Atomically mark the book as borrowed by the user.
+            // If the book is already borrowed, or another user borrowed it concurrently, throw an exception.
+            if (!book.tryBorrow(userId)) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
 
-        // Mark the book as borrowed.
-        book.borrow();
+            // Record the borrowing transaction in the database by associating the book's ISBN with the user's Id.
+            // If the database rejects it, release the book so it does not stay borrowed without a record,
+            // unless it has since been returned and borrowed by someone else.
+            try {
+                databaseService.borrowBook(ISBN, userId);
+            } catch (RuntimeException e) {
+                book.tryReturn(userId);
+                throw e;
+            }
 
-        // Record the borrowing transaction in the database by associating the book's ISBN with the user's Id.
-        databaseService.borrowBook(ISBN, userId);
+            // Only now that the database accepted the borrowing, add the book to the user's borrowed books.
+            // The book may be a copy not shared with concurrent callers, so marking it proves nothing by itself.
+            borrowIndex.record(ISBN, userId);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.BORROW_BOOK, start, failure);
+        }
     }
 
     /**
@@ -217,31 +624,125 @@ public class Library {
      * @param ISBN The International Standard Book Number of the book.
      */
     public void returnBook(String ISBN) {
-        
-        // Validate the ISBN. If it's not valid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
-        }
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            // Validate the ISBN. If it's not valid, throw an exception.
+            if (!isISBNValid(ISBN)) {
+                throw new IllegalArgumentException("Invalid ISBN.");
+            }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+            // Retrieve the book associated with the ISBN from the database.
+            Book book = findBook(ISBN);
 
-        // If no book is found for the given ISBN, throw a book not found exception.
-        if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+            // If no book is found for the given ISBN, throw a book not found exception.
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
+
+            // Atomically change the status of the book to not borrowed. If it was not borrowed, it means it was
+            // never borrowed or it has already been returned (possibly concurrently), therefore throw an exception.
+            String borrowerId = book.getBorrowerId();
+            if (!book.tryReturn()) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+
+            // Update the database to reflect the returned status of the book.
+            // If the database rejects it, mark the book as borrowed again, as the database still lists it so.
+            try {
+                databaseService.returnBook(ISBN);
+            } catch (RuntimeException e) {
+                restoreBorrower(book, borrowerId);
+                throw e;
+            }
+
+            // Only now that the database accepted the return, remove the book from the borrower's borrowed books.
+            borrowIndex.forget(ISBN, borrowerId);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.RETURN_BOOK, start, failure);
         }
+    }
 
-        // Check if the book is currently borrowed. If not, it means it was never borrowed
-        // or it has already been returned, therefore throw an exception.
-        if (!book.isBorrowed()) {
-            throw new BookNotBorrowedException("Book wasn't borrowed!");
+    // Marks a book whose return failed as borrowed again, unless it was borrowed by someone else in the meantime.
+    private static void restoreBorrower(Book book, String borrowerId) {
+        if (borrowerId != null) {
+            book.tryBorrow(borrowerId);
+            return;
         }
+        try {
+            book.borrow();
+        } catch (IllegalStateException e) {
+            // Borrowed again in the meantime.
+        }
+    }
+
+    /**
+     * Fetches the books a user currently holds. The ISBNs are taken from an in-memory index of the books
+     * borrowed through this library, and the books are fetched with a single call to the database.
+     * The index is not read from the database: when a library is started on an existing database, books borrowed
+     * before are only included once they are passed to {@link #indexBooks(Collection)}, and books borrowed
+     * without a known borrower are never included.
+     *
+     * @param userId The Id of the user.
+     * @return The borrowed books sorted by ISBN, or an empty list if the user holds none.
+     */
+    public List<Book> getBorrowedBooks(String userId) {
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            // Validate the user Id format (should be a 12-digit number).
+            // If it's invalid, throw an exception.
+            long numericUserId = UserId.toLong(userId);
+            if (numericUserId < 0) {
+                throw new IllegalArgumentException("Invalid user Id.");
+            }
+
+            Set<String> ISBNs = borrowIndex.getBorrowedISBNs(numericUserId);
+            if (ISBNs.isEmpty()) {
+                return new ArrayList<>();
+            }
 
-        // Change the status of the book to not borrowed.
-        book.returnBook();
+            // Keep the order of the ISBNs, leaving out books no longer found in the database.
+            Map<String, Book> books = databaseService.getBooksByISBN(ISBNs);
+            List<Book> borrowedBooks = new ArrayList<>(ISBNs.size());
+            for (String ISBN : ISBNs) {
+                Book book = books.get(ISBN);
+                if (book != null) {
+                    borrowedBooks.add(book);
+                }
+            }
+            return borrowedBooks;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.GET_BORROWED_BOOKS, start, failure);
+        }
+    }
 
-        // Update the database to reflect the returned status of the book.
-        databaseService.returnBook(ISBN);
+    /**
+     * Counts the books a user currently holds, without querying the database. Like {@link #getBorrowedBooks(String)},
+     * books borrowed before the library started are only counted once they are passed to {@link #indexBooks(Collection)}.
+     *
+     * @param userId The Id of the user.
+     * @return The number of books borrowed through this library and not yet returned.
+     */
+    public int countBorrowed(String userId) {
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            // Validate the user Id format (should be a 12-digit number).
+            // If it's invalid, throw an exception.
+            return borrowIndex.countBorrowed(UserId.parse(userId).longValue());
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.COUNT_BORROWED, start, failure);
+        }
     }
 
     /**
@@ -251,20 +752,39 @@ public class Library {
      * @param userId The Id of the user to whom the reviews are to be sent.
      */
     public void notifyUserWithBookReviews(String ISBN, String userId) {
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            // Validate the ISBN. If it's invalid, throw an exception.
+            if (!isISBNValid(ISBN)) {
+                throw new IllegalArgumentException("Invalid ISBN.");
+            }
 
-        // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
-        }
+            // Validate the user Id format (should be a 12-digit number).
+            // If it's invalid, throw an exception.
+            if (!UserId.isValid(userId)) {
+                throw new IllegalArgumentException("Invalid user Id.");
+            }
 
-        // Validate the user Id format (should be a 12-digit number).
-        // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
+            sendBookReviews(ISBN, userId);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, start, failure);
         }
+    }
+
+    /**
+     * Sends the reviews of a book to a user whose ISBN and Id were already validated.
+     *
+     * @param ISBN   The valid ISBN of the book whose reviews are to be sent.
+     * @param userId The valid Id of the user to whom the reviews are to be sent.
+     */
+    private void sendBookReviews(String ISBN, String userId) {
 
         // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+        Book book = findBook(ISBN);
 
         // If no book is found for the given ISBN, throw a book not found exception.
         if (book == null) {
@@ -272,42 +792,234 @@ public class Library {
         }
 
         // Retrieve the user associated with the user Id from the database.
-        User user = databaseService.getUserById(userId);
+        User user = findUser(userId);
 
         // If the user is not found in the database, throw an exception.
         if (user == null) {
             throw new UserNotRegisteredException("User not found!");
         }
 
-        // Fetch the list of reviews for the specified book using the review service.
-        List<String> reviews;
+        // With limits, read only the reviews that fit in the notification and stream the notification to the user.
+        int maxReviews = maxReviewsPerNotification;
+        int maxChars = maxCharsPerNotification;
+        if (maxReviews > 0) {
+            ReviewsMessage message = fetchReviews(reviewService -> ReviewsMessage.collect(
+                    book.getTitle(), reviewService.iterateReviewsForBook(ISBN), maxReviews, maxChars));
+
+            // If no reviews are found, throw an exception.
+            if (message.isEmpty()) {
+                throw new NoReviewsFoundException("No reviews found!");
+            }
+
+            sendNotification(() -> user.sendNotification(message));
+            return;
+        }
+
+        // Fetch the list of reviews for the specified book using a review service leased from the pool.
+        List<String> reviews = fetchReviews(reviewService -> reviewService.getReviewsForBook(ISBN));
+
+        // If no reviews are found or the review list is empty, throw an exception.
+        if (reviews == null || reviews.isEmpty()) {
+            throw new NoReviewsFoundException("No reviews found!");
+        }
+
+        // Construct the notification message containing the book's title and its reviews.
+        String notificationMessage = "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
+
+        sendNotification(() -> user.sendNotification(notificationMessage));
+    }
+
+    /**
+     * Notifies a user with the reviews of many books in a single notification, as done by digest jobs.
+     * The books are fetched with a single call to the database and their reviews with a single call to the
+     * review service. Books without reviews are left out of the notification.
+     *
+     * @param ISBNs  The ISBNs of the books whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     */
+    public void notifyUserWithBookReviews(Collection<String> ISBNs, String userId) {
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
         try {
-            reviews = reviewService.getReviewsForBook(ISBN);
+            // Validate the ISBNs, ignoring duplicates. If any of them is invalid, throw an exception.
+            if (ISBNs == null || ISBNs.isEmpty()) {
+                throw new IllegalArgumentException("Invalid ISBNs.");
+            }
+            Set<String> validISBNs = new LinkedHashSet<>(ISBNs);
+            for (String ISBN : validISBNs) {
+                if (!isISBNValid(ISBN)) {
+                    throw new IllegalArgumentException("Invalid ISBN.");
+                }
+            }
 
-            // If no reviews are found or the review list is empty, throw an exception.
-            if (reviews == null || reviews.isEmpty()) {
+            // Validate the user Id format (should be a 12-digit number).
+            // If it's invalid, throw an exception.
+            if (!UserId.isValid(userId)) {
+                throw new IllegalArgumentException("Invalid user Id.");
+            }
+
+            // Retrieve all the books at once. If any of them is not found, throw a book not found exception.
+            for (String ISBN : validISBNs) {
+                if (!mightContainBook(ISBN)) {
+                    throw new BookNotFoundException("Book not found!");
+                }
+            }
+            Map<String, Book> books = databaseService.getBooksByISBN(validISBNs);
+            if (!books.keySet().containsAll(validISBNs)) {
+                throw new BookNotFoundException("Book not found!");
+            }
+
+            // Retrieve the user associated with the user Id from the database.
+            User user = findUser(userId);
+
+            // If the user is not found in the database, throw an exception.
+            if (user == null) {
+                throw new UserNotRegisteredException("User not found!");
+            }
+
+            // Fetch the reviews of all the books at once using a review service leased from the pool.
+            Map<String, List<String>> reviews = fetchReviews(reviewService -> reviewService.getReviewsForBooks(validISBNs));
+
+            // Construct one section per reviewed book, in the order the ISBNs were given.
+            StringJoiner notificationMessage = new StringJoiner("\n\n");
+            for (String ISBN : validISBNs) {
+                List<String> bookReviews = reviews == null ? null : reviews.get(ISBN);
+                if (bookReviews != null && !bookReviews.isEmpty()) {
+                    notificationMessage.add("Reviews for '" + books.get(ISBN).getTitle() + "':\n" + String.join("\n", bookReviews));
+                }
+            }
+
+            // If none of the books has reviews, throw an exception.
+            if (notificationMessage.length() == 0) {
                 throw new NoReviewsFoundException("No reviews found!");
             }
+
+            String digest = notificationMessage.toString();
+            sendNotification(() -> user.sendNotification(digest));
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.NOTIFY_USER_WITH_REVIEWS_DIGEST, start, failure);
+        }
+    }
+
+    /**
+     * Fetches a book from the database, unless the membership filter shows it was never stored.
+     *
+     * @param ISBN The valid ISBN of the book.
+     * @return The book, or null if it is not found.
+     */
+    private Book findBook(String ISBN) {
+        if (!mightContainBook(ISBN)) {
+            return null;
+        }
+        return databaseService.getBookByISBN(ISBN);
+    }
+
+    /**
+     * Fetches a user from the database, unless the membership filter shows they were never registered.
+     *
+     * @param userId The valid Id of the user.
+     * @return The user, or null if they are not found.
+     */
+    private User findUser(String userId) {
+        if (!mightContainUser(userId)) {
+            return null;
+        }
+        return databaseService.getUserById(userId);
+    }
+
+    // Checks whether a valid ISBN may be stored, i.e. there is no filter or the filter may hold it.
+    private boolean mightContainBook(String ISBN) {
+        BloomFilter filter = bookFilter;
+        return filter == null || filter.mightContain(IsbnValidator.toLong(ISBN));
+    }
+
+    // Checks whether a valid user Id may be registered, i.e. there is no filter or the filter may hold it.
+    private boolean mightContainUser(String userId) {
+        BloomFilter filter = userFilter;
+        return filter == null || filter.mightContain(UserId.toLong(userId));
+    }
+
+    private void addBooksToFilter(Collection<String> ISBNs) {
+        if (bookFilter != null) {
+            for (String ISBN : ISBNs) {
+                bookFilter.put(IsbnValidator.toLong(ISBN));
+            }
+        }
+    }
+
+    private void addUsersToFilter(Collection<String> userIds) {
+        if (userFilter != null) {
+            for (String userId : userIds) {
+                userFilter.put(UserId.toLong(userId));
+            }
+        }
+    }
+
+    /**
+     * Fetches reviews using a review service leased from the pool, handing the service back afterwards.
+     *
+     * @param fetch The fetch to be done with the leased review service.
+     * @return The result of the fetch.
+     * @throws ReviewServiceUnavailableException If there's an issue fetching the reviews.
+     */
+    private <T> T fetchReviews(Function<ReviewService, T> fetch) {
+        ReviewService reviewService = reviewServicePool.lease();
+        boolean reusable = true;
+        long start = metrics.startTimer();
+        try {
+            T result = fetch.apply(reviewService);
+            metrics.recordReviewFetch(start, true);
+            return result;
         } catch (ReviewException e) {
+            metrics.recordReviewFetch(start, false);
             // If there's an issue fetching the reviews, throw a service unavailable exception.
+            // The connection may be broken, so it is not reused.
+            reusable = false;
             throw new ReviewServiceUnavailableException("Review service unavailable!");
+        } catch (ReviewServiceUnavailableException e) {
+            // A decorator such as an open circuit breaker refused the fetch without reaching the backend,
+            // so the fetch failed but the service itself is fine and is reused.
+            metrics.recordReviewFetch(start, false);
+            throw e;
         } finally {
-            // Always close the review service connection after attempting to fetch the reviews.
-            reviewService.close();
+            // Always hand the review service back after attempting to fetch the reviews.
+            if (reusable) {
+                reviewServicePool.release(reviewService);
+            } else {
+                reviewServicePool.invalidate(reviewService);
+            }
         }
+    }
 
-        // Construct the notification message containing the book's title and its reviews.
-        String notificationMessage = "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
-
-        // Attempt to send the notification to the user. If it fails, retry up to 5 times.
-        int retryCount = 0;
-        while (retryCount < 5) {
+    /**
+     * Sends a notification to a user. If it fails, it is retried as allowed by the retry policy,
+     * waiting between attempts so a struggling notification backend is given room to recover.
+     *
+     * @param notification Sends the notification once.
+     * @throws NotificationException If all attempts fail.
+     */
+    private void sendNotification(Runnable notification) {
+        RetryPolicy policy = retryPolicy;
+        int maxAttempts = policy.getMaxAttempts();
+        policy.onCall();
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            NotificationException failure;
             try {
-                user.sendNotification(notificationMessage);
+                notification.run();
                 return;
             } catch (NotificationException e) {
-                retryCount++;
-                System.err.println("Notification failed! Retrying attempt " + retryCount + "/5");
+                failure = e;
+            }
+            if (attempt == maxAttempts || !policy.tryAcquireRetry()) {
+                break;
+            }
+            metrics.recordNotificationRetry();
+            eventListener.onEvent(LibraryEvent.notificationRetry(attempt, maxAttempts, failure));
+            if (!backOff(policy.getDelayMillis(attempt))) {
+                break;
             }
         }
 
@@ -315,6 +1027,25 @@ public class Library {
         throw new NotificationException("Notification failed!");
     }
 
+    /**
+     * Waits before retrying a failed notification.
+     *
+     * @param delayMillis The time to wait, in milliseconds.
+     * @return true if the wait completed, false if the thread was interrupted and should stop retrying.
+     */
+    private static boolean backOff(long delayMillis) {
+        if (delayMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(delayMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Fetches a book by its ISBN and notifies the user with its reviews.
      *
@@ -323,40 +1054,63 @@ public class Library {
      * @return       The book with the given ISBN if found, and notifies the user with its reviews.
      */
     public Book getBookByISBN(String ISBN, String userId) {
-        // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
-        }
+        long start = metrics.startTimer();
+        RuntimeException failure = null;
+        try {
+            // Validate the ISBN. If it's invalid, throw an exception.
+            if (!isISBNValid(ISBN)) {
+                throw new IllegalArgumentException("Invalid ISBN.");
+            }
 
-        // Validate the user Id format (should be a 12-digit number). 
-        // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
-        }
+            // Validate the user Id format (should be a 12-digit number).
+            // If it's invalid, throw an exception.
+            if (!UserId.isValid(userId)) {
+                throw new IllegalArgumentException("Invalid user Id.");
+            }
 
-        // Retrieve the book associated with the ISBN from the database.
-        Book book = databaseService.getBookByISBN(ISBN);
+            // Retrieve the book associated with the ISBN from the database.
+            Book book = findBook(ISBN);
 
-        // If no book is found for the given ISBN, throw a book not found exception.
-        if (book == null) {
-            throw new BookNotFoundException("Book not found!");
-        }
+            // If no book is found for the given ISBN, throw a book not found exception.
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
 
-        // If the book is already borrowed, throw an exception.
-        if (book.isBorrowed()) {
-            throw new BookAlreadyBorrowedException("Book was already borrowed!");
-        }
+            // If the book is already borrowed, throw an exception.
+            if (book.isBorrowed()) {
+                throw new BookAlreadyBorrowedException("Book was already borrowed!");
+            }
 
-        // Attempt to notify the user with the book's reviews.
-        // This step is optional, so even if it fails, the book should still be returned.
-        try {
-            notifyUserWithBookReviews(ISBN, userId);
-        } catch (Exception e) {
-            System.out.println("Notification failed!");
-        }
+            // Attempt to notify the user with the book's reviews.
+            // This step is optional, so even if it fails, the book should still be returned.
+            NotificationDispatcher dispatcher = notificationDispatcher;
+            if (dispatcher != null) {
+                // Send the notification in the background; failures and rejections are counted by the dispatcher,
+                // and failures are also published from the background thread, like in the synchronous case.
+                dispatcher.dispatch(() -> {
+                    try {
+                        sendBookReviews(ISBN, userId);
+                    } catch (RuntimeException e) {
+                        eventListener.onEvent(LibraryEvent.notificationSkipped(ISBN, userId, e));
+                        throw e;
+                    }
+                });
+            } else {
+                try {
+                    sendBookReviews(ISBN, userId);
+                } catch (Exception e) {
+                    eventListener.onEvent(LibraryEvent.notificationSkipped(ISBN, userId, e));
+                }
+            }
 
-        // Return the retrieved book.
-        return book;
+            // Return the retrieved book.
+            return book;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            metrics.recordOperation(Operation.GET_BOOK_BY_ISBN, start, failure);
+        }
     }
 }
 
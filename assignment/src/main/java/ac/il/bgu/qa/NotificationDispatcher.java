@@ -0,0 +1,171 @@
+package ac.il.bgu.qa;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs optional notification work in the background, so callers do not wait for it.
+ * The number of pending tasks is bounded: when the bound is reached, new tasks are rejected
+ * and counted instead of queueing without limit, which keeps a slow notification backend
+ * from exhausting memory. On Java 21 and later every task runs on its own virtual thread,
+ * otherwise tasks run on a fixed pool of daemon threads.
+ */
+public class NotificationDispatcher implements AutoCloseable {
+
+    // The executor running the tasks.
+    private final ExecutorService executor;
+    // Limits the number of tasks that are queued or running.
+    private final Semaphore permits;
+    // The maximum number of tasks that are queued or running.
+    private final int maxPending;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Constructs a new NotificationDispatcher.
+     *
+     * @param maxPending The maximum number of tasks that may be queued or running at once.
+     * @param poolSize   The number of threads used when virtual threads are not available.
+     */
+    public NotificationDispatcher(int maxPending, int poolSize) {
+        this(createExecutor(poolSize), maxPending);
+    }
+
+    /**
+     * Constructs a new NotificationDispatcher running tasks on the given executor.
+     *
+     * @param executor   The executor running the tasks. It is shut down when the dispatcher is closed.
+     * @param maxPending The maximum number of tasks that may be queued or running at once.
+     */
+    public NotificationDispatcher(ExecutorService executor, int maxPending) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        } else if (maxPending <= 0) {
+            throw new IllegalArgumentException("Invalid maximum of pending tasks.");
+        }
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.permits = new Semaphore(maxPending);
+    }
+
+    /**
+     * Submits a task to run in the background, unless too many tasks are already pending.
+     * Exceptions thrown by the task are counted as failures and otherwise ignored.
+     *
+     * @param task The task to be run.
+     * @return true if the task was accepted, false if it was rejected.
+     */
+    public boolean dispatch(Runnable task) {
+        if (!permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                    completed.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The executor was shut down.
+            permits.release();
+            rejected.incrementAndGet();
+            return false;
+        }
+        submitted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Retrieves the number of tasks accepted for execution.
+     *
+     * @return The number of submitted tasks.
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * Retrieves the number of tasks rejected because too many tasks were pending or the dispatcher was closed.
+     *
+     * @return The number of rejected tasks.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Retrieves the number of tasks that finished successfully.
+     *
+     * @return The number of completed tasks.
+     */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Retrieves the number of tasks that finished with an exception.
+     *
+     * @return The number of failed tasks.
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Retrieves the number of tasks that are currently queued or running.
+     *
+     * @return The number of pending tasks.
+     */
+    public int getPendingCount() {
+        return maxPending - permits.availablePermits();
+    }
+
+    /**
+     * Stops accepting tasks and waits for a short while for the pending ones to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Creates a virtual thread per task executor when the runtime supports it, otherwise a fixed pool.
+    private static ExecutorService createExecutor(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("Invalid pool size.");
+        }
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Virtual threads are not available before Java 21.
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "library-notification-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(poolSize, threadFactory);
+    }
+}
@@ -0,0 +1,124 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.services.MessageBody;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The notification message listing the reviews of a book, capped in number of reviews and characters.
+ * Only the reviews that fit in the message are kept, so the memory used for a book with many reviews
+ * is bounded by the caps rather than by the number of reviews. When reviews are left out, the message
+ * ends with a "..." line. The line naming the book counts against the cap in characters, and its title is
+ * shortened when the line does not fit.
+ */
+final class ReviewsMessage implements MessageBody {
+
+    // The line ending a message from which reviews were left out.
+    private static final String TRUNCATION_MARKER = "\n...";
+    // The text around the title in the first line of the message.
+    private static final String HEADER_PREFIX = "Reviews for '";
+    private static final String HEADER_SUFFIX = "':";
+    // The end of a title shortened to fit in the first line.
+    private static final String TITLE_ELLIPSIS = "...";
+
+    // The first line of the message, naming the book.
+    private final String header;
+    // The reviews kept for the message.
+    private final List<String> reviews;
+    // Whether the book has no reviews at all.
+    private final boolean empty;
+    // Whether reviews were left out of the message.
+    private final boolean truncated;
+    // The maximum number of characters of the message.
+    private final int maxChars;
+
+    private ReviewsMessage(String header, List<String> reviews, boolean empty, boolean truncated, int maxChars) {
+        this.header = header;
+        this.reviews = reviews;
+        this.empty = empty;
+        this.truncated = truncated;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Reads the reviews that fit in a single message, leaving the rest of the iterator unread.
+     *
+     * @param title      The title of the book.
+     * @param reviews    The reviews of the book, or null if it has none.
+     * @param maxReviews The maximum number of reviews in the message.
+     * @param maxChars   The maximum number of characters in the message, the line naming the book included.
+     * @return The message.
+     */
+    static ReviewsMessage collect(String title, Iterator<String> reviews, int maxReviews, int maxChars) {
+        boolean empty = reviews == null || !reviews.hasNext();
+        String header = HEADER_PREFIX + title + HEADER_SUFFIX;
+        List<String> kept = new ArrayList<>();
+        long length = header.length();
+        if (reviews != null) {
+            // Stop after the first review that does not fit, so the message knows it is truncated.
+            while (kept.size() < maxReviews && length <= maxChars && reviews.hasNext()) {
+                String review = reviews.next();
+                kept.add(review);
+                length += 1 + review.length();
+            }
+        }
+        // A header too long on its own reads no review, so only a kept review can have overflowed the message.
+        boolean truncated = (!kept.isEmpty() && length > maxChars) || (reviews != null && reviews.hasNext());
+        header = fitHeader(title, truncated ? maxChars - TRUNCATION_MARKER.length() : maxChars);
+        return new ReviewsMessage(header, kept, empty, truncated, maxChars);
+    }
+
+    // Builds the line naming the book, shortening the title, or the whole line if even that is not enough, to fit.
+    private static String fitHeader(String title, int maxLength) {
+        String header = HEADER_PREFIX + title + HEADER_SUFFIX;
+        if (header.length() <= maxLength) {
+            return header;
+        }
+        int titleLength = maxLength - HEADER_PREFIX.length() - HEADER_SUFFIX.length() - TITLE_ELLIPSIS.length();
+        if (titleLength >= 0) {
+            return HEADER_PREFIX + title.substring(0, titleLength) + TITLE_ELLIPSIS + HEADER_SUFFIX;
+        }
+        return header.substring(0, Math.max(0, maxLength));
+    }
+
+    /**
+     * Checks whether the book has no reviews at all.
+     *
+     * @return true if there are no reviews, false otherwise.
+     */
+    boolean isEmpty() {
+        return empty;
+    }
+
+    @Override
+    public void writeTo(Appendable out) throws IOException {
+        out.append(header);
+        long written = header.length();
+        long budget = truncated ? maxChars - TRUNCATION_MARKER.length() : maxChars;
+        for (String review : reviews) {
+            if (written + 1 + review.length() > budget) {
+                break;
+            }
+            out.append('\n').append(review);
+            written += 1 + review.length();
+        }
+        if (truncated && written + TRUNCATION_MARKER.length() <= maxChars) {
+            out.append(TRUNCATION_MARKER);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder message = new StringBuilder();
+        try {
+            writeTo(message);
+        } catch (IOException e) {
+            // A StringBuilder never fails.
+            throw new IllegalStateException(e);
+        }
+        return message.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package ac.il.bgu.qa;
 
 import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.services.MessageBody;
 import ac.il.bgu.qa.services.NotificationService;
 
 /**
@@ -68,5 +69,15 @@ public class User {
         notificationService.notifyUser(id, message);
     }
 
+    /**
+     * Sends a notification message, written piece by piece, to this user.
+     *
+     * @param body The content of the notification.
+     * @throws NotificationException If there's an error while sending the notification.
+     */
+    public void sendNotification(MessageBody body) throws NotificationException {
+        notificationService.notifyUser(id, body);
+    }
+
 }
 
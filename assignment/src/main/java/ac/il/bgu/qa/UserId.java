@@ -0,0 +1,119 @@
+package ac.il.bgu.qa;
+
+/**
+ * Represents a validated user identifier.
+ * A user Id is exactly 12 decimal digits, so it is parsed once and kept as a primitive long,
+ * which lets maps and indexes key on the number instead of on the String form.
+ */
+public final class UserId implements Comparable<UserId> {
+
+    // The number of digits in a user Id.
+    private static final int ID_LENGTH = 12;
+
+    // The numeric value of the user Id.
+    private final long value;
+
+    private UserId(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Validates if input is a 12-digit user Id.
+     *
+     * @param id The user Id to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValid(CharSequence id) {
+        return toLong(id) >= 0;
+    }
+
+    /**
+     * Parses a 12-digit user Id.
+     *
+     * @param id The user Id to be parsed.
+     * @return The parsed user Id.
+     * @throws IllegalArgumentException If the Id is null or is not made of exactly 12 digits.
+     */
+    public static UserId parse(CharSequence id) {
+        long value = toLong(id);
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return new UserId(value);
+    }
+
+    /**
+     * Creates a user Id from its numeric value.
+     *
+     * @param value The numeric value, between 0 and 999999999999.
+     * @return The user Id.
+     * @throws IllegalArgumentException If the value does not fit in 12 digits.
+     */
+    public static UserId of(long value) {
+        if (value < 0 || value > 999_999_999_999L) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return new UserId(value);
+    }
+
+    /**
+     * Converts a 12-digit user Id to its numeric value in a single pass.
+     *
+     * @param id The user Id to be converted.
+     * @return The numeric value, or -1 if the Id is invalid.
+     */
+    public static long toLong(CharSequence id) {
+        if (id == null || id.length() != ID_LENGTH) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Retrieves the numeric value of the user Id.
+     *
+     * @return The user Id as a long.
+     */
+    public long longValue() {
+        return value;
+    }
+
+    /**
+     * Formats the user Id back to its 12-digit form, including leading zeros.
+     *
+     * @return The 12-digit user Id.
+     */
+    @Override
+    public String toString() {
+        char[] digits = new char[ID_LENGTH];
+        long remaining = value;
+        for (int i = ID_LENGTH - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + (remaining % 10));
+            remaining /= 10;
+        }
+        return new String(digits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof UserId && ((UserId) o).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    public int compareTo(UserId other) {
+        return Long.compare(value, other.value);
+    }
+}
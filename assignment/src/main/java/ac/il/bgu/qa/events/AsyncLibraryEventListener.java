@@ -0,0 +1,244 @@
+package ac.il.bgu.qa.events;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands events to another listener on a single background thread, so publishing an event never blocks.
+ * <p>
+ * Events are put in a bounded lock-free ring buffer. When the buffer is full, or more events than the rate limit
+ * are published within a second, the new events are dropped and counted instead of making the publisher wait.
+ * The background thread reports the number of dropped events to the other listener with an
+ * {@link LibraryEvent.Type#EVENTS_DROPPED} event, so drops remain visible. The thread is a daemon thread,
+ * started when the first event is published.
+ */
+public class AsyncLibraryEventListener implements LibraryEventListener, AutoCloseable {
+
+    // How long the background thread sleeps when there is no event, unless woken up by a publisher.
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // How long closing waits for the remaining events to be handed over.
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    // The listener receiving the events on the background thread.
+    private final LibraryEventListener delegate;
+    // The maximum number of events accepted per second, or 0 for no limit.
+    private final int maxEventsPerSecond;
+
+    // The ring buffer. The sequence of a slot tells whether it is free for a given publish position
+    // (sequence == position) or holds the event of a given position (sequence == position + 1).
+    private final AtomicReferenceArray<LibraryEvent> events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    // The next position to publish to, shared by the publishers.
+    private final AtomicLong tail = new AtomicLong();
+    // The next position to hand over, used by the background thread only.
+    private long head;
+
+    // The second of the current rate limit window, and the events accepted within it.
+    private final AtomicLong windowSecond = new AtomicLong(-1);
+    private final AtomicLong windowEvents = new AtomicLong();
+
+    private final Thread thread;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean idle;
+    private volatile boolean closed;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong delivered = new AtomicLong();
+    // The dropped events not yet reported to the delegate, used by the background thread only.
+    private long reportedDrops;
+
+    /**
+     * Constructs a new AsyncLibraryEventListener.
+     *
+     * @param delegate           The listener receiving the events on the background thread. It may block.
+     * @param capacity           The maximum number of events waiting to be handed over, rounded up to a power of two.
+     * @param maxEventsPerSecond The maximum number of events accepted per second, or 0 for no limit.
+     */
+    public AsyncLibraryEventListener(LibraryEventListener delegate, int capacity, int maxEventsPerSecond) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid event listener.");
+        } else if (capacity <= 0 || capacity > 1 << 20) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        } else if (maxEventsPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid maximum of events per second.");
+        }
+        this.delegate = delegate;
+        this.maxEventsPerSecond = maxEventsPerSecond;
+
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        events = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+
+        thread = new Thread(this::run, "library-events");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Returns at once; the event is dropped if the buffer is full, the rate limit is reached or this listener is closed.
+     */
+    @Override
+    public void onEvent(LibraryEvent event) {
+        if (event == null) {
+            return;
+        }
+        if (closed || !withinRateLimit() || !offer(event)) {
+            dropped.increment();
+            return;
+        }
+        published.increment();
+
+        if (!started.get() && started.compareAndSet(false, true)) {
+            thread.start();
+        } else if (idle) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stops accepting events and waits up to a second for the waiting events to be handed over.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (started.get()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of events accepted into the buffer.
+     *
+     * @return The number of accepted events.
+     */
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    /**
+     * Retrieves the number of events dropped because the buffer was full, the rate limit was reached
+     * or this listener was closed.
+     *
+     * @return The number of dropped events.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Retrieves the number of events handed to the other listener, drop reports excluded.
+     *
+     * @return The number of handed over events.
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    // Counts an event against the limit of the current second. Approximate when a second ends concurrently.
+    private boolean withinRateLimit() {
+        if (maxEventsPerSecond == 0) {
+            return true;
+        }
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        long current = windowSecond.get();
+        if (current != second && windowSecond.compareAndSet(current, second)) {
+            windowEvents.set(0);
+        }
+        return windowEvents.incrementAndGet() <= maxEventsPerSecond;
+    }
+
+    // Claims the next free slot and publishes the event in it, or fails if the buffer is full.
+    private boolean offer(LibraryEvent event) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events.set(slot, event);
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot still holds an event from a lap ago.
+                return false;
+            } else {
+                // Another publisher claimed this position.
+                position = tail.get();
+            }
+        }
+    }
+
+    // Takes the next published event, or null if there is none yet.
+    private LibraryEvent poll() {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        LibraryEvent event = events.get(slot);
+        events.set(slot, null);
+        sequences.set(slot, head + mask + 1);
+        head++;
+        return event;
+    }
+
+    // The loop of the background thread.
+    private void run() {
+        while (true) {
+            LibraryEvent event = poll();
+            if (event != null) {
+                deliver(event);
+                delivered.incrementAndGet();
+                continue;
+            }
+
+            reportDrops();
+            if (closed) {
+                return;
+            }
+
+            // Announce that the thread is idle, then check again so a concurrent publish is not missed.
+            idle = true;
+            if (sequences.get((int) head & mask) != head + 1) {
+                idle = false;
+                continue;
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            idle = false;
+        }
+    }
+
+    // Reports the events dropped since the last report.
+    private void reportDrops() {
+        long drops = dropped.sum();
+        if (drops > reportedDrops) {
+            deliver(LibraryEvent.eventsDropped(drops - reportedDrops));
+            reportedDrops = drops;
+        }
+    }
+
+    private void deliver(LibraryEvent event) {
+        try {
+            delegate.onEvent(event);
+        } catch (RuntimeException e) {
+            // A failing listener must not stop the delivery of the next events; there is nowhere to report it.
+        }
+    }
+}
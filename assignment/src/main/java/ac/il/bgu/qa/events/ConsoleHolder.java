@@ -0,0 +1,13 @@
+package ac.il.bgu.qa.events;
+
+/**
+ * Holds the listener returned by {@link LibraryEventListener#console()}, created on first use.
+ */
+final class ConsoleHolder {
+
+    static final LibraryEventListener INSTANCE =
+            new AsyncLibraryEventListener(new ConsoleLibraryEventListener(System.err), 1024, 100);
+
+    private ConsoleHolder() {
+    }
+}
@@ -0,0 +1,30 @@
+package ac.il.bgu.qa.events;
+
+import java.io.PrintStream;
+
+/**
+ * Writes every event as a line to a stream. Writing to a stream may block, so this listener is meant to be
+ * run behind an {@link AsyncLibraryEventListener} rather than called by the library directly.
+ */
+public class ConsoleLibraryEventListener implements LibraryEventListener {
+
+    // The stream the events are written to.
+    private final PrintStream out;
+
+    /**
+     * Constructs a new ConsoleLibraryEventListener.
+     *
+     * @param out The stream the events are written to, e.g. System.err.
+     */
+    public ConsoleLibraryEventListener(PrintStream out) {
+        if (out == null) {
+            throw new IllegalArgumentException("Invalid stream.");
+        }
+        this.out = out;
+    }
+
+    @Override
+    public void onEvent(LibraryEvent event) {
+        out.println(event);
+    }
+}
@@ -0,0 +1,99 @@
+package ac.il.bgu.qa.events;
+
+/**
+ * Something noteworthy that happened in a library without failing the caller, such as a retried notification.
+ * Events are immutable, so they can be handed to another thread.
+ */
+public final class LibraryEvent {
+
+    /**
+     * The types of events.
+     */
+    public enum Type {
+        // A notification attempt failed and is about to be retried.
+        NOTIFICATION_RETRY,
+        // An optional notification failed and was given up without failing the caller.
+        NOTIFICATION_SKIPPED,
+        // Events were dropped because the listener could not keep up.
+        EVENTS_DROPPED
+    }
+
+    private final Type type;
+    private final long timeMillis;
+    private final String message;
+    private final Throwable cause;
+
+    private LibraryEvent(Type type, String message, Throwable cause) {
+        this.type = type;
+        this.timeMillis = System.currentTimeMillis();
+        this.message = message;
+        this.cause = cause;
+    }
+
+    /**
+     * Creates the event of a failed notification attempt that is about to be retried.
+     *
+     * @param attempt     The number of the failed attempt, starting at 1.
+     * @param maxAttempts The maximum number of attempts.
+     * @param cause       The failure of the attempt.
+     * @return The event.
+     */
+    public static LibraryEvent notificationRetry(int attempt, int maxAttempts, Throwable cause) {
+        return new LibraryEvent(Type.NOTIFICATION_RETRY,
+                "Notification failed! Retrying attempt " + attempt + "/" + maxAttempts, cause);
+    }
+
+    /**
+     * Creates the event of an optional notification that failed and was given up.
+     *
+     * @param ISBN   The ISBN of the book the notification was about.
+     * @param userId The Id of the user who was to be notified.
+     * @param cause  The failure of the notification.
+     * @return The event.
+     */
+    public static LibraryEvent notificationSkipped(String ISBN, String userId, Throwable cause) {
+        return new LibraryEvent(Type.NOTIFICATION_SKIPPED,
+                "Notification failed! Book " + ISBN + ", user " + userId, cause);
+    }
+
+    /**
+     * Creates the event reporting events that were dropped.
+     *
+     * @param count The number of dropped events.
+     * @return The event.
+     */
+    public static LibraryEvent eventsDropped(long count) {
+        return new LibraryEvent(Type.EVENTS_DROPPED, count + " events dropped", null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves when the event happened.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Retrieves the failure behind the event.
+     *
+     * @return The failure, or null if there is none.
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return cause == null ? type + ": " + message : type + ": " + message + " (" + cause + ")";
+    }
+}
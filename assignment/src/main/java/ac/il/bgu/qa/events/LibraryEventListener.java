@@ -0,0 +1,38 @@
+package ac.il.bgu.qa.events;
+
+/**
+ * Receives the events of a library. Events are published on the threads serving the library's callers,
+ * so a listener must return quickly and never block, e.g. by handing the event to
+ * an {@link AsyncLibraryEventListener}.
+ */
+@FunctionalInterface
+public interface LibraryEventListener {
+
+    /**
+     * Receives an event.
+     *
+     * @param event The event.
+     */
+    void onEvent(LibraryEvent event);
+
+    /**
+     * Retrieves the listener used by a library by default. It writes the events to the standard error stream
+     * from a single background thread, dropping events that arrive faster than 100 per second or while
+     * 1024 events are waiting, so callers never wait for the console.
+     *
+     * @return The shared listener.
+     */
+    static LibraryEventListener console() {
+        return ConsoleHolder.INSTANCE;
+    }
+
+    /**
+     * Retrieves a listener ignoring every event.
+     *
+     * @return The listener.
+     */
+    static LibraryEventListener ignoring() {
+        return event -> {
+        };
+    }
+}
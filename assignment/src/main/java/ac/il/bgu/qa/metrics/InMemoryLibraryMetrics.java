@@ -0,0 +1,170 @@
+package ac.il.bgu.qa.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics kept in memory, to be read by a monitoring job or exported to a metrics backend.
+ * <p>
+ * For every operation, the calls are counted and timed in a {@link LatencyHistogram}, and failed calls are
+ * counted by the type of the exception they threw. Counters are {@link LongAdder}s, so recording scales
+ * with the number of threads calling the library.
+ */
+public class InMemoryLibraryMetrics implements LibraryMetrics {
+
+    // The statistics of each operation. Filled at construction, then only read.
+    private final Map<Operation, OperationStats> operations = new EnumMap<>(Operation.class);
+
+    private final LongAdder notificationRetries = new LongAdder();
+    private final LatencyHistogram reviewFetchLatency = new LatencyHistogram();
+    private final LongAdder reviewFetchFailures = new LongAdder();
+
+    /**
+     * Constructs a new InMemoryLibraryMetrics.
+     */
+    public InMemoryLibraryMetrics() {
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationStats());
+        }
+    }
+
+    @Override
+    public long startTimer() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void recordOperation(Operation operation, long startNanos, Throwable failure) {
+        long elapsed = System.nanoTime() - startNanos;
+        OperationStats stats = operations.get(operation);
+        stats.latency.record(elapsed);
+        if (failure != null) {
+            stats.errors.computeIfAbsent(failure.getClass(), type -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public void recordNotificationRetry() {
+        notificationRetries.increment();
+    }
+
+    @Override
+    public void recordReviewFetch(long startNanos, boolean succeeded) {
+        reviewFetchLatency.record(System.nanoTime() - startNanos);
+        if (!succeeded) {
+            reviewFetchFailures.increment();
+        }
+    }
+
+    /**
+     * Retrieves the number of calls of an operation, whether they succeeded or not.
+     *
+     * @param operation The operation.
+     * @return The number of calls.
+     */
+    public long getCallCount(Operation operation) {
+        return operations.get(operation).latency.getCount();
+    }
+
+    /**
+     * Retrieves the latency of an operation, including failed calls.
+     *
+     * @param operation The operation.
+     * @return The live histogram of the durations of the calls.
+     */
+    public LatencyHistogram getLatency(Operation operation) {
+        return operations.get(operation).latency;
+    }
+
+    /**
+     * Retrieves the number of calls of an operation that failed.
+     *
+     * @param operation The operation.
+     * @return The number of failed calls.
+     */
+    public long getErrorCount(Operation operation) {
+        long errors = 0;
+        for (LongAdder counter : operations.get(operation).errors.values()) {
+            errors += counter.sum();
+        }
+        return errors;
+    }
+
+    /**
+     * Retrieves the number of calls of an operation that failed with a type of exception.
+     *
+     * @param operation The operation.
+     * @param type      The exact type of the exception, e.g. BookNotFoundException.class.
+     * @return The number of calls that threw an exception of the type.
+     */
+    public long getErrorCount(Operation operation, Class<? extends Throwable> type) {
+        LongAdder counter = operations.get(operation).errors.get(type);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Retrieves the number of calls of any operation that failed with a type of exception.
+     *
+     * @param type The exact type of the exception.
+     * @return The number of calls that threw an exception of the type.
+     */
+    public long getErrorCount(Class<? extends Throwable> type) {
+        long errors = 0;
+        for (Operation operation : Operation.values()) {
+            errors += getErrorCount(operation, type);
+        }
+        return errors;
+    }
+
+    /**
+     * Retrieves the failures of an operation broken down by the type of exception.
+     *
+     * @param operation The operation.
+     * @return A snapshot of the number of failures for each type of exception thrown so far.
+     */
+    public Map<Class<? extends Throwable>, Long> getErrorCounts(Operation operation) {
+        Map<Class<? extends Throwable>, Long> counts = new HashMap<>();
+        for (Map.Entry<Class<? extends Throwable>, LongAdder> entry : operations.get(operation).errors.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Retrieves the number of retries of failed notifications.
+     *
+     * @return The number of retries.
+     */
+    public long getNotificationRetryCount() {
+        return notificationRetries.sum();
+    }
+
+    /**
+     * Retrieves the latency of the fetches from the review service, including failed fetches.
+     *
+     * @return The live histogram of the durations of the fetches.
+     */
+    public LatencyHistogram getReviewFetchLatency() {
+        return reviewFetchLatency;
+    }
+
+    /**
+     * Retrieves the number of fetches from the review service that failed.
+     *
+     * @return The number of failed fetches.
+     */
+    public long getReviewFetchFailureCount() {
+        return reviewFetchFailures.sum();
+    }
+
+    // The statistics of a single operation.
+    private static final class OperationStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final ConcurrentMap<Class<? extends Throwable>, LongAdder> errors = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,68 @@
+package ac.il.bgu.qa.metrics;
+
+/**
+ * Receives measurements of the operations of a {@link ac.il.bgu.qa.Library}.
+ * <p>
+ * An operation is timed by calling {@link #startTimer()} before it and passing the result to
+ * {@link #recordOperation(Operation, long, Throwable)} after it. Implementations that do not measure time
+ * may return 0 from {@link #startTimer()}, so the clock is not read at all. Implementations must be thread-safe.
+ */
+public interface LibraryMetrics {
+
+    /**
+     * The measured operations of a library.
+     */
+    enum Operation {
+        ADD_BOOK,
+        ADD_BOOKS,
+        FIND_BOOKS_BY_AUTHOR,
+        FIND_BOOKS_BY_TITLE_PREFIX,
+        REGISTER_USER,
+        REGISTER_USERS,
+        BORROW_BOOK,
+        RETURN_BOOK,
+        GET_BORROWED_BOOKS,
+        COUNT_BORROWED,
+        NOTIFY_USER_WITH_BOOK_REVIEWS,
+        NOTIFY_USER_WITH_REVIEWS_DIGEST,
+        GET_BOOK_BY_ISBN
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @return The current time in nanoseconds, to be passed back when recording the operation.
+     */
+    long startTimer();
+
+    /**
+     * Records the completion of an operation.
+     *
+     * @param operation  The operation.
+     * @param startNanos The value returned by {@link #startTimer()} before the operation.
+     * @param failure    The exception thrown by the operation, or null if it succeeded.
+     */
+    void recordOperation(Operation operation, long startNanos, Throwable failure);
+
+    /**
+     * Records a retry of a failed notification.
+     */
+    void recordNotificationRetry();
+
+    /**
+     * Records the completion of a fetch from the review service.
+     *
+     * @param startNanos The value returned by {@link #startTimer()} before the fetch.
+     * @param succeeded  true if the reviews were fetched, false if the review service failed.
+     */
+    void recordReviewFetch(long startNanos, boolean succeeded);
+
+    /**
+     * Retrieves metrics that record nothing, used by a library by default.
+     *
+     * @return The metrics.
+     */
+    static LibraryMetrics noop() {
+        return NoopLibraryMetrics.INSTANCE;
+    }
+}
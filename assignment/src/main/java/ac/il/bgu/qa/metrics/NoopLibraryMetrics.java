@@ -0,0 +1,29 @@
+package ac.il.bgu.qa.metrics;
+
+/**
+ * Metrics that record nothing and never read the clock.
+ */
+final class NoopLibraryMetrics implements LibraryMetrics {
+
+    static final NoopLibraryMetrics INSTANCE = new NoopLibraryMetrics();
+
+    private NoopLibraryMetrics() {
+    }
+
+    @Override
+    public long startTimer() {
+        return 0;
+    }
+
+    @Override
+    public void recordOperation(Operation operation, long startNanos, Throwable failure) {
+    }
+
+    @Override
+    public void recordNotificationRetry() {
+    }
+
+    @Override
+    public void recordReviewFetch(long startNanos, boolean succeeded) {
+    }
+}
@@ -0,0 +1,233 @@
+package ac.il.bgu.qa.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calls to a failing backend for a while, so callers fail fast instead of waiting for it.
+ * <p>
+ * While CLOSED, the outcomes of the last calls are kept in a rolling window. Once the window holds at least
+ * the minimum number of calls and either the share of failed calls or the share of slow calls reaches its
+ * threshold, the breaker becomes OPEN and rejects every call. After the open duration it becomes HALF_OPEN and
+ * lets a few trial calls through: if they are healthy it closes again, otherwise it opens for another period.
+ * <p>
+ * Callers ask for permission with {@link #tryAcquirePermission()} and, when granted, report the outcome with
+ * {@link #onSuccess(long)} or {@link #onFailure(long)}.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+        // Calls are permitted and their outcomes recorded.
+        CLOSED,
+        // Calls are rejected until the open duration has passed.
+        OPEN,
+        // A limited number of trial calls are permitted to probe the backend.
+        HALF_OPEN
+    }
+
+    // Outcome flags stored in the rolling window.
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    // The share of failed calls, in percent, that opens the breaker.
+    private final float failureRateThreshold;
+    // The share of slow calls, in percent, that opens the breaker.
+    private final float slowCallRateThreshold;
+    // Calls taking at least this long are considered slow, in nanoseconds.
+    private final long slowCallDurationNanos;
+    // The minimum number of calls in the window before the rates are evaluated.
+    private final int minimumCalls;
+    // How long the breaker stays open before allowing trial calls, in nanoseconds.
+    private final long openDurationNanos;
+    // The number of trial calls permitted while half open.
+    private final int halfOpenCalls;
+    // The source of the current time, in nanoseconds.
+    private final LongSupplier clock;
+
+    // The outcomes of the last calls, used as a ring buffer.
+    private final byte[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+    private int windowSlowCalls;
+
+    private State state = State.CLOSED;
+    private long openUntil;
+    private int halfOpenPermitted;
+    private int halfOpenCompleted;
+    private int halfOpenFailures;
+    private int halfOpenSlowCalls;
+    private long notPermittedCount;
+
+    /**
+     * Constructs a new CircuitBreaker that only considers failures, not slow calls.
+     *
+     * @param failureRateThreshold The share of failed calls, in percent, that opens the breaker.
+     * @param windowSize           The number of most recent calls considered.
+     * @param openDurationMillis   How long the breaker stays open before allowing trial calls, in milliseconds.
+     */
+    public CircuitBreaker(float failureRateThreshold, int windowSize, long openDurationMillis) {
+        this(failureRateThreshold, 100, Long.MAX_VALUE / 1_000_000, windowSize, windowSize, openDurationMillis, 1);
+    }
+
+    /**
+     * Constructs a new CircuitBreaker.
+     *
+     * @param failureRateThreshold   The share of failed calls, in percent, that opens the breaker.
+     * @param slowCallRateThreshold  The share of slow calls, in percent, that opens the breaker.
+     * @param slowCallDurationMillis Calls taking at least this long are considered slow, in milliseconds.
+     * @param windowSize             The number of most recent calls considered.
+     * @param minimumCalls           The minimum number of calls in the window before the rates are evaluated.
+     * @param openDurationMillis     How long the breaker stays open before allowing trial calls, in milliseconds.
+     * @param halfOpenCalls          The number of trial calls permitted while half open.
+     */
+    public CircuitBreaker(float failureRateThreshold, float slowCallRateThreshold, long slowCallDurationMillis,
+                          int windowSize, int minimumCalls, long openDurationMillis, int halfOpenCalls) {
+        this(failureRateThreshold, slowCallRateThreshold, slowCallDurationMillis, windowSize, minimumCalls,
+                openDurationMillis, halfOpenCalls, System::nanoTime);
+    }
+
+    // Visible for tests, which control the clock.
+    CircuitBreaker(float failureRateThreshold, float slowCallRateThreshold, long slowCallDurationMillis,
+                   int windowSize, int minimumCalls, long openDurationMillis, int halfOpenCalls, LongSupplier clock) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 100
+                || slowCallRateThreshold <= 0 || slowCallRateThreshold > 100) {
+            throw new IllegalArgumentException("Invalid rate threshold.");
+        } else if (slowCallDurationMillis <= 0 || openDurationMillis < 0) {
+            throw new IllegalArgumentException("Invalid duration.");
+        } else if (windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize || halfOpenCalls <= 0) {
+            throw new IllegalArgumentException("Invalid number of calls.");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMillis);
+        this.minimumCalls = minimumCalls;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.halfOpenCalls = halfOpenCalls;
+        this.clock = clock;
+        this.window = new byte[windowSize];
+    }
+
+    /**
+     * Asks for permission to make a call.
+     *
+     * @return true if the call may proceed and its outcome must be reported, false if it must fail fast.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && clock.getAsLong() - openUntil >= 0) {
+            transitionTo(State.HALF_OPEN);
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenPermitted < halfOpenCalls) {
+                    halfOpenPermitted++;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        notPermittedCount++;
+        return false;
+    }
+
+    /**
+     * Reports a permitted call that succeeded.
+     *
+     * @param durationNanos The duration of the call, in nanoseconds.
+     */
+    public void onSuccess(long durationNanos) {
+        record(false, durationNanos);
+    }
+
+    /**
+     * Reports a permitted call that failed.
+     *
+     * @param durationNanos The duration of the call, in nanoseconds.
+     */
+    public void onFailure(long durationNanos) {
+        record(true, durationNanos);
+    }
+
+    /**
+     * Retrieves the current state of the breaker.
+     *
+     * @return The state.
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.getAsLong() - openUntil >= 0) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    /**
+     * Retrieves the number of calls rejected while the breaker was open or its trial calls were in use.
+     *
+     * @return The number of rejected calls.
+     */
+    public synchronized long getNotPermittedCount() {
+        return notPermittedCount;
+    }
+
+    private synchronized void record(boolean failed, long durationNanos) {
+        boolean slow = durationNanos >= slowCallDurationNanos;
+        if (state == State.HALF_OPEN) {
+            halfOpenCompleted++;
+            halfOpenFailures += failed ? 1 : 0;
+            halfOpenSlowCalls += slow ? 1 : 0;
+            if (halfOpenCompleted >= halfOpenCalls) {
+                transitionTo(exceedsThresholds(halfOpenFailures, halfOpenSlowCalls, halfOpenCompleted)
+                        ? State.OPEN : State.CLOSED);
+            }
+            return;
+        } else if (state == State.OPEN) {
+            // A call permitted before the breaker opened; its outcome no longer matters.
+            return;
+        }
+
+        // Replace the oldest outcome in the window with the new one.
+        byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        if (windowCount == window.length) {
+            byte oldest = window[windowIndex];
+            windowFailures -= oldest & FAILED;
+            windowSlowCalls -= (oldest & SLOW) >> 1;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        windowFailures += failed ? 1 : 0;
+        windowSlowCalls += slow ? 1 : 0;
+
+        if (windowCount >= minimumCalls && exceedsThresholds(windowFailures, windowSlowCalls, windowCount)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private boolean exceedsThresholds(int failures, int slowCalls, int calls) {
+        return failures * 100f >= failureRateThreshold * calls || slowCalls * 100f >= slowCallRateThreshold * calls;
+    }
+
+    private void transitionTo(State next) {
+        state = next;
+        if (next == State.OPEN) {
+            openUntil = clock.getAsLong() + openDurationNanos;
+        } else if (next == State.HALF_OPEN) {
+            halfOpenPermitted = 0;
+            halfOpenCompleted = 0;
+            halfOpenFailures = 0;
+            halfOpenSlowCalls = 0;
+        } else {
+            windowIndex = 0;
+            windowCount = 0;
+            windowFailures = 0;
+            windowSlowCalls = 0;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ac.il.bgu.qa.resilience;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link RetryPolicy} that waits exponentially longer between attempts, with random jitter.
+ * The delay before retry n is drawn uniformly between 0 and min(maxDelay, baseDelay * 2^(n-1))
+ * ("full jitter"), so clients that failed together do not retry together. An optional
+ * {@link RetryBudget} shared between calls caps the overall share of retries.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    // The maximum number of attempts of a single call, including the first one.
+    private final int maxAttempts;
+    // The upper bound of the delay before the first retry, in milliseconds.
+    private final long baseDelayMillis;
+    // The upper bound of the delay before any retry, in milliseconds.
+    private final long maxDelayMillis;
+    // The budget shared by all calls, or null for no global limit.
+    private final RetryBudget budget;
+
+    /**
+     * Constructs a new ExponentialBackoffRetryPolicy.
+     *
+     * @param maxAttempts     The maximum number of attempts of a single call, including the first one.
+     * @param baseDelayMillis The upper bound of the delay before the first retry, in milliseconds.
+     * @param maxDelayMillis  The upper bound of the delay before any retry, in milliseconds.
+     * @param budget          The retry budget shared by all calls, or null for no global limit.
+     */
+    public ExponentialBackoffRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, RetryBudget budget) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Invalid maximum of attempts.");
+        } else if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid delay.");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.budget = budget;
+    }
+
+    @Override
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    @Override
+    public long getDelayMillis(int retry) {
+        if (baseDelayMillis == 0) {
+            return 0;
+        }
+        // Double the bound for every retry, without overflowing once it passes the maximum.
+        int shift = Math.min(Math.max(retry - 1, 0), 62);
+        long bound = baseDelayMillis > (maxDelayMillis >> shift) ? maxDelayMillis : baseDelayMillis << shift;
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    @Override
+    public void onCall() {
+        if (budget != null) {
+            budget.deposit();
+        }
+    }
+
+    @Override
+    public boolean tryAcquireRetry() {
+        return budget == null || budget.tryWithdraw();
+    }
+}
@@ -0,0 +1,80 @@
+package ac.il.bgu.qa.resilience;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of retries relative to the number of calls, across all calls sharing the budget.
+ * Every call deposits a fraction of a token and every retry withdraws a whole token, so in the long run
+ * retries make up at most the given ratio of the calls. When a backend fails persistently the budget
+ * runs dry and calls stop retrying, instead of multiplying the load on the failing backend.
+ */
+public class RetryBudget {
+
+    // Tokens are kept in thousandths, so fractional deposits need no floating point arithmetic.
+    private static final long SCALE = 1000;
+
+    // The tokens currently available, in thousandths.
+    private final AtomicLong tokens;
+    // The tokens deposited by every call, in thousandths.
+    private final long depositPerCall;
+    // The maximum number of tokens kept, in thousandths.
+    private final long maxTokens;
+
+    /**
+     * Constructs a new RetryBudget, initially full.
+     *
+     * @param retryRatio The number of retries allowed per call in the long run, e.g. 0.1 for one retry per ten calls.
+     * @param maxRetries The maximum number of retries that can be saved up for a burst of failures.
+     */
+    public RetryBudget(double retryRatio, int maxRetries) {
+        if (retryRatio < 0 || Double.isNaN(retryRatio)) {
+            throw new IllegalArgumentException("Invalid retry ratio.");
+        } else if (maxRetries < 0) {
+            throw new IllegalArgumentException("Invalid maximum of retries.");
+        }
+        this.depositPerCall = Math.round(retryRatio * SCALE);
+        this.maxTokens = maxRetries * SCALE;
+        this.tokens = new AtomicLong(maxTokens);
+    }
+
+    /**
+     * Deposits the share of a new call.
+     */
+    public void deposit() {
+        if (depositPerCall == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + depositPerCall)));
+    }
+
+    /**
+     * Withdraws the token of a retry, if one is available.
+     *
+     * @return true if the retry may proceed, false if the budget is exhausted.
+     */
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * Retrieves the number of retries currently available.
+     *
+     * @return The number of whole tokens in the budget.
+     */
+    public long getAvailableRetries() {
+        return tokens.get() / SCALE;
+    }
+}
@@ -0,0 +1,61 @@
+package ac.il.bgu.qa.resilience;
+
+/**
+ * Decides how often, and how long after a failure, an operation is attempted again.
+ * A policy may also limit retries globally, through a budget shared by all the calls using it.
+ */
+public interface RetryPolicy {
+
+    /**
+     * Retrieves the maximum number of attempts of a single call, including the first one.
+     *
+     * @return The maximum number of attempts, at least 1.
+     */
+    int getMaxAttempts();
+
+    /**
+     * Retrieves how long to wait before a retry.
+     *
+     * @param retry The number of the retry, starting at 1 for the second attempt.
+     * @return The delay in milliseconds, or 0 to retry immediately.
+     */
+    long getDelayMillis(int retry);
+
+    /**
+     * Records the start of a new call, before its first attempt.
+     */
+    default void onCall() {
+    }
+
+    /**
+     * Asks for permission to retry a failed attempt.
+     *
+     * @return true if the retry may proceed, false if the call should give up.
+     */
+    default boolean tryAcquireRetry() {
+        return true;
+    }
+
+    /**
+     * Creates a policy that retries immediately, without any delay or budget.
+     *
+     * @param maxAttempts The maximum number of attempts of a single call, including the first one.
+     * @return The retry policy.
+     */
+    static RetryPolicy immediate(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Invalid maximum of attempts.");
+        }
+        return new RetryPolicy() {
+            @Override
+            public int getMaxAttempts() {
+                return maxAttempts;
+            }
+
+            @Override
+            public long getDelayMillis(int retry) {
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides a non-blocking interface for services responsible for managing the database of books and users.
+ * Every operation returns immediately with a future that completes once the database has answered.
+ */
+public interface AsyncDatabaseService {
+
+    /**
+     * Adds a book to the database.
+     *
+     * @param ISBN The International Standard Book Number identifying the book.
+     * @param book The book to be added.
+     * @return A future completing once the book was added.
+     */
+    CompletableFuture<Void> addBook(String ISBN, Book book);
+
+    /**
+     * Registers a user with the database.
+     *
+     * @param id   The unique identifier for the user.
+     * @param user The user to be registered.
+     * @return A future completing once the user was registered.
+     */
+    CompletableFuture<Void> registerUser(String id, User user);
+
+    /**
+     * Fetches a book from the database using its ISBN.
+     *
+     * @param ISBN The International Standard Book Number.
+     * @return A future of the book with the given ISBN, or of null if the book does not exist in the database.
+     */
+    CompletableFuture<Book> getBookByISBN(String ISBN);
+
+    /**
+     * Fetches a user from the database using their ID.
+     *
+     * @param userId The unique identifier for the user.
+     * @return A future of the user with the given ID, or of null if the user is not registered in the database.
+     */
+    CompletableFuture<User> getUserById(String userId);
+
+    /**
+     * Borrows a book identified by its ISBN for a user identified by their userId.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     * @return A future completing once the borrowing was recorded.
+     */
+    CompletableFuture<Void> borrowBook(String ISBN, String userId);
+
+    /**
+     * Marks a book identified by its ISBN as returned in the database.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @return A future completing once the return was recorded.
+     */
+    CompletableFuture<Void> returnBook(String ISBN);
+
+    /**
+     * Adapts a blocking database service by running each of its calls on an executor.
+     *
+     * @param databaseService The blocking database service.
+     * @param executor        The executor running the blocking calls, so callers are never blocked.
+     * @return The non-blocking database service.
+     */
+    static AsyncDatabaseService fromSync(DatabaseService databaseService, Executor executor) {
+        return new SyncDatabaseServiceAdapter(databaseService, executor);
+    }
+}
@@ -0,0 +1,37 @@
+package ac.il.bgu.qa.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides a non-blocking interface for services responsible for notifying users.
+ */
+public interface AsyncNotificationService {
+
+    /**
+     * Sends a notification message to a specific user.
+     *
+     * @param userId  The unique identifier of the user to be notified.
+     * @param message The content of the notification message.
+     * @return A future completing once the notification was sent, or exceptionally with a
+     *         {@link ac.il.bgu.qa.errors.NotificationException} if there's an issue sending it.
+     */
+    CompletableFuture<Void> notifyUser(String userId, String message);
+
+    /**
+     * Adapts a blocking notification service by running each notification on an executor.
+     *
+     * @param notificationService The blocking notification service.
+     * @param executor            The executor running the blocking calls, so callers are never blocked.
+     * @return The non-blocking notification service.
+     */
+    static AsyncNotificationService fromSync(NotificationService notificationService, Executor executor) {
+        if (notificationService == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        } else if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        return (userId, message) -> CompletableFuture.runAsync(
+                () -> notificationService.notifyUser(userId, message), executor);
+    }
+}
@@ -0,0 +1,70 @@
+package ac.il.bgu.qa.services;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides a non-blocking interface for services that retrieve book reviews.
+ */
+public interface AsyncReviewService {
+
+    /**
+     * Fetches the list of reviews for a book based on its ISBN.
+     *
+     * @param ISBN The International Standard Book Number (ISBN) of the book.
+     * @return A future of the reviews associated with the given book's ISBN, completing exceptionally
+     *         with a {@link ac.il.bgu.qa.errors.ReviewException} if there's an issue fetching the reviews.
+     */
+    CompletableFuture<List<String>> getReviewsForBook(String ISBN);
+
+    /**
+     * Adapts a blocking review service by running each fetch on an executor.
+     * Like the blocking library, the review service is closed after every fetch.
+     *
+     * @param reviewService The blocking review service.
+     * @param executor      The executor running the blocking calls, so callers are never blocked.
+     * @return The non-blocking review service.
+     */
+    static AsyncReviewService fromSync(ReviewService reviewService, Executor executor) {
+        if (reviewService == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        return ISBN -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return reviewService.getReviewsForBook(ISBN);
+            } finally {
+                reviewService.close();
+            }
+        }, executor);
+    }
+
+    /**
+     * Adapts a pool of blocking review services by running each fetch on an executor
+     * with an instance leased from the pool.
+     *
+     * @param reviewServicePool The pool of blocking review services.
+     * @param executor          The executor running the blocking calls, so callers are never blocked.
+     * @return The non-blocking review service.
+     */
+    static AsyncReviewService fromPool(ReviewServicePool reviewServicePool, Executor executor) {
+        if (reviewServicePool == null) {
+            throw new IllegalArgumentException("Invalid review service pool.");
+        } else if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        return ISBN -> CompletableFuture.supplyAsync(() -> {
+            ReviewService reviewService = reviewServicePool.lease();
+            try {
+                List<String> reviews = reviewService.getReviewsForBook(ISBN);
+                reviewServicePool.release(reviewService);
+                return reviews;
+            } catch (RuntimeException e) {
+                reviewServicePool.invalidate(reviewService);
+                throw e;
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,249 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link NotificationService} that coalesces the messages sent to the same user.
+ * The first message for a user opens a batch. Messages for that user are then buffered until the
+ * batch window ends or the batch holds the maximum number of messages. The batch is then delivered
+ * to the underlying service as one message, with the buffered messages separated by a blank line.
+ * A user browsing many books in a short time therefore gets one notification instead of one per book.
+ * <p>
+ * Since the callers have already returned when their messages are delivered, a failed delivery
+ * is counted instead of being thrown. Closing the service delivers every pending batch.
+ */
+public class BatchingNotificationService implements NotificationService, AutoCloseable {
+
+    // The separator placed between the messages of a batch.
+    private static final String SEPARATOR = "\n\n";
+
+    // The notification service the batches are delivered to.
+    private final NotificationService delegate;
+    // Schedules the delivery of a batch at the end of its window.
+    private final ScheduledExecutorService scheduler;
+    // Whether the scheduler was created by this service, and must be shut down when it is closed.
+    private final boolean ownsScheduler;
+    // The length of the batch window, in milliseconds.
+    private final long windowMillis;
+    // The number of messages that causes a batch to be delivered before its window ends.
+    private final int maxMessages;
+
+    // The open batches, keyed by user Id.
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>();
+    // Whether the service was closed, after which messages are delivered without buffering.
+    private volatile boolean closed;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Constructs a new BatchingNotificationService with its own scheduler thread.
+     *
+     * @param delegate     The notification service the batches are delivered to.
+     * @param windowMillis The time a batch stays open after its first message, in milliseconds.
+     * @param maxMessages  The number of messages that causes a batch to be delivered before its window ends.
+     */
+    public BatchingNotificationService(NotificationService delegate, long windowMillis, int maxMessages) {
+        this(delegate, windowMillis, maxMessages, Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "library-notification-batcher");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * Constructs a new BatchingNotificationService using the given scheduler.
+     *
+     * @param delegate     The notification service the batches are delivered to.
+     * @param windowMillis The time a batch stays open after its first message, in milliseconds.
+     * @param maxMessages  The number of messages that causes a batch to be delivered before its window ends.
+     * @param scheduler    The scheduler delivering batches at the end of their window. It is not shut down
+     *                     when this service is closed.
+     */
+    public BatchingNotificationService(NotificationService delegate, long windowMillis, int maxMessages,
+                                       ScheduledExecutorService scheduler) {
+        this(delegate, windowMillis, maxMessages, scheduler, false);
+    }
+
+    private BatchingNotificationService(NotificationService delegate, long windowMillis, int maxMessages,
+                                        ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        } else if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Invalid batch window.");
+        } else if (maxMessages <= 0) {
+            throw new IllegalArgumentException("Invalid maximum of messages.");
+        } else if (scheduler == null) {
+            throw new IllegalArgumentException("Invalid scheduler.");
+        }
+        this.delegate = delegate;
+        this.windowMillis = windowMillis;
+        this.maxMessages = maxMessages;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * Buffers a message for a user, delivering the user's batch if it is full.
+     * After the service is closed, the message is delivered directly.
+     *
+     * @param userId  The unique identifier of the user to be notified.
+     * @param message The content of the notification message.
+     * @throws NotificationException If the service is closed and the direct delivery failed.
+     */
+    @Override
+    public void notifyUser(String userId, String message) throws NotificationException {
+        if (userId == null) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        received.incrementAndGet();
+        if (closed) {
+            delegate.notifyUser(userId, message);
+            delivered.incrementAndGet();
+            return;
+        }
+
+        // Append the message to the user's batch, opening a new batch if there is none,
+        // and take the batch out of the map once it is full.
+        Batch[] full = new Batch[1];
+        boolean[] opened = new boolean[1];
+        Batch batch = batches.compute(userId, (id, current) -> {
+            if (current == null) {
+                current = new Batch();
+                opened[0] = true;
+            }
+            current.messages.add(message);
+            if (current.messages.size() >= maxMessages) {
+                full[0] = current;
+                return null;
+            }
+            return current;
+        });
+
+        if (full[0] != null) {
+            deliver(userId, full[0]);
+        } else if (opened[0]) {
+            schedule(userId, batch);
+        }
+
+        // If the service was closed concurrently, make sure the message does not stay buffered.
+        if (closed) {
+            flush(userId);
+        }
+    }
+
+    /**
+     * Delivers every pending batch now, without waiting for the end of its window.
+     */
+    public void flush() {
+        for (String userId : batches.keySet()) {
+            flush(userId);
+        }
+    }
+
+    /**
+     * Delivers every pending batch and stops buffering. Messages sent afterwards are delivered directly.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Retrieves the number of messages received from callers.
+     *
+     * @return The number of received messages.
+     */
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * Retrieves the number of deliveries made to the underlying notification service.
+     *
+     * @return The number of successful deliveries.
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Retrieves the number of batches whose delivery failed. Their messages are lost.
+     *
+     * @return The number of failed deliveries.
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Retrieves the number of users with a pending batch.
+     *
+     * @return The number of open batches.
+     */
+    public int getPendingBatchCount() {
+        return batches.size();
+    }
+
+    // Delivers the pending batch of a user, if there is one.
+    private void flush(String userId) {
+        Batch batch = batches.remove(userId);
+        if (batch != null) {
+            deliver(userId, batch);
+        }
+    }
+
+    // Delivers a batch at the end of its window, unless it was delivered earlier.
+    private void schedule(String userId, Batch batch) {
+        Runnable task = () -> {
+            if (batches.remove(userId, batch)) {
+                deliver(userId, batch);
+            }
+        };
+        try {
+            batch.timer = scheduler.schedule(task, windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Without a working scheduler, deliver the batch right away rather than keeping it forever.
+            task.run();
+        }
+    }
+
+    // Merges the messages of a batch and delivers them as a single notification.
+    private void deliver(String userId, Batch batch) {
+        Future<?> timer = batch.timer;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        try {
+            delegate.notifyUser(userId, String.join(SEPARATOR, batch.messages));
+            delivered.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * The messages buffered for a user. The list is only modified while the batch is in the map,
+     * under the map's lock for the user, and only read once the batch was removed from the map.
+     */
+    private static class Batch {
+        final List<String> messages = new ArrayList<>();
+        volatile Future<?> timer;
+    }
+}
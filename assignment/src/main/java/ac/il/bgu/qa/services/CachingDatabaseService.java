@@ -0,0 +1,347 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link DatabaseService} that caches the books and users read from another database service.
+ * <p>
+ * Books and users are kept in separate bounded caches, each with its own time-to-live: users never change once
+ * registered and can be kept long, while books change whenever they are borrowed or returned. Every write through
+ * this service removes the written books and users from the cache after reaching the database. Books and users
+ * that are not found are not cached. Entries are keyed by the ISBN or Id exactly as given, as the database keys
+ * them, so a lookup returns what the database would return for the same spelling.
+ * <p>
+ * A lookup that misses reads the database and then caches the result. A concurrent write may change the book
+ * in between, making the result stale, so every write also advances a generation counter of the keys it touches.
+ * A lookup that sees the generation of its key change while it was reading removes the result it just cached.
+ * Writes made to the database without going through this service are only seen once the entries expire.
+ */
+public class CachingDatabaseService implements DatabaseService {
+
+    // The number of generation counters; keys sharing a counter only cause extra misses, never stale entries.
+    private static final int GENERATIONS = 64;
+
+    // The database service the books and users are read from and written to.
+    private final DatabaseService delegate;
+    // The cached books and users, keyed by their ISBN or Id as given.
+    private final ExpiringLruCache<String, Book> books;
+    private final ExpiringLruCache<String, User> users;
+    // The time-to-live of books and of users, in nanoseconds.
+    private final long bookTtlNanos;
+    private final long userTtlNanos;
+    // Advanced by every write to the keys mapped to them, so lookups overlapping a write can detect it.
+    private final AtomicLongArray bookGenerations = new AtomicLongArray(GENERATIONS);
+    private final AtomicLongArray userGenerations = new AtomicLongArray(GENERATIONS);
+
+    /**
+     * Constructs a new CachingDatabaseService.
+     *
+     * @param delegate      The database service to read from on a cache miss and to write to.
+     * @param maxBooks      The maximum number of books kept in the cache.
+     * @param bookTtlMillis The time a book stays cached, in milliseconds.
+     * @param maxUsers      The maximum number of users kept in the cache.
+     * @param userTtlMillis The time a user stays cached, in milliseconds.
+     */
+    public CachingDatabaseService(DatabaseService delegate, int maxBooks, long bookTtlMillis, int maxUsers, long userTtlMillis) {
+        this(delegate, maxBooks, bookTtlMillis, maxUsers, userTtlMillis, System::nanoTime);
+    }
+
+    // Visible for tests, which control the clock.
+    CachingDatabaseService(DatabaseService delegate, int maxBooks, long bookTtlMillis, int maxUsers, long userTtlMillis,
+                           LongSupplier clock) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (bookTtlMillis < 0 || userTtlMillis < 0) {
+            throw new IllegalArgumentException("Invalid time-to-live.");
+        }
+        this.delegate = delegate;
+        this.books = new ExpiringLruCache<>(maxBooks, clock);
+        this.users = new ExpiringLruCache<>(maxUsers, clock);
+        this.bookTtlNanos = TimeUnit.MILLISECONDS.toNanos(bookTtlMillis);
+        this.userTtlNanos = TimeUnit.MILLISECONDS.toNanos(userTtlMillis);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        try {
+            delegate.addBook(ISBN, book);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        try {
+            delegate.registerUser(id, user);
+        } finally {
+            invalidateUser(id);
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        if (ISBN == null) {
+            return delegate.getBookByISBN(null);
+        }
+        Book book = books.get(ISBN);
+        if (book != null) {
+            return book;
+        }
+
+        long generation = bookGenerations.get(slot(ISBN));
+        book = delegate.getBookByISBN(ISBN);
+        storeBook(ISBN, book, generation);
+        return book;
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        if (userId == null) {
+            return delegate.getUserById(null);
+        }
+        User user = users.get(userId);
+        if (user != null) {
+            return user;
+        }
+
+        long generation = userGenerations.get(slot(userId));
+        user = delegate.getUserById(userId);
+        storeUser(userId, user, generation);
+        return user;
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        try {
+            delegate.borrowBook(ISBN, userId);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        try {
+            delegate.returnBook(ISBN);
+        } finally {
+            invalidateBook(ISBN);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The books are written with a single call to the underlying database service.
+     */
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        try {
+            delegate.addBooks(books);
+        } finally {
+            for (String ISBN : books.keySet()) {
+                invalidateBook(ISBN);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cached books are answered from the cache, and all the missing books are read from the underlying
+     * database service with a single call.
+     */
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> found = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String ISBN : ISBNs) {
+            Book book = ISBN == null ? null : books.get(ISBN);
+            if (book != null) {
+                found.put(ISBN, book);
+            } else {
+                misses.add(ISBN);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            long[] generations = new long[misses.size()];
+            for (int i = 0; i < generations.length; i++) {
+                String key = misses.get(i);
+                generations[i] = key == null ? 0 : bookGenerations.get(slot(key));
+            }
+            Map<String, Book> fetched = delegate.getBooksByISBN(misses);
+            for (int i = 0; i < generations.length; i++) {
+                String ISBN = misses.get(i);
+                Book book = fetched.get(ISBN);
+                if (book != null) {
+                    found.put(ISBN, book);
+                    if (ISBN != null) {
+                        storeBook(ISBN, book, generations[i]);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The users are written with a single call to the underlying database service.
+     */
+    @Override
+    public void registerUsers(Map<String, User> users) {
+        try {
+            delegate.registerUsers(users);
+        } finally {
+            for (String id : users.keySet()) {
+                invalidateUser(id);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cached users are answered from the cache, and all the missing users are read from the underlying
+     * database service with a single call.
+     */
+    @Override
+    public Map<String, User> getUsersById(Collection<String> userIds) {
+        Map<String, User> found = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String userId : userIds) {
+            User user = userId == null ? null : users.get(userId);
+            if (user != null) {
+                found.put(userId, user);
+            } else {
+                misses.add(userId);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            long[] generations = new long[misses.size()];
+            for (int i = 0; i < generations.length; i++) {
+                String key = misses.get(i);
+                generations[i] = key == null ? 0 : userGenerations.get(slot(key));
+            }
+            Map<String, User> fetched = delegate.getUsersById(misses);
+            for (int i = 0; i < generations.length; i++) {
+                String userId = misses.get(i);
+                User user = fetched.get(userId);
+                if (user != null) {
+                    found.put(userId, user);
+                    if (userId != null) {
+                        storeUser(userId, user, generations[i]);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Removes a cached book, so the next lookup reaches the database.
+     * Use this after the book was changed without going through this service.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    public void invalidateBook(String ISBN) {
+        if (ISBN != null) {
+            bookGenerations.incrementAndGet(slot(ISBN));
+            books.invalidate(ISBN);
+        }
+    }
+
+    /**
+     * Removes all cached books and users.
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATIONS; i++) {
+            bookGenerations.incrementAndGet(i);
+            userGenerations.incrementAndGet(i);
+        }
+        books.invalidateAll();
+        users.invalidateAll();
+    }
+
+    /**
+     * Retrieves the number of book lookups answered from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getBookHitCount() {
+        return books.getHitCount();
+    }
+
+    /**
+     * Retrieves the number of book lookups that had to reach the database.
+     *
+     * @return The number of cache misses.
+     */
+    public long getBookMissCount() {
+        return books.getMissCount();
+    }
+
+    /**
+     * Retrieves the number of user lookups answered from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getUserHitCount() {
+        return users.getHitCount();
+    }
+
+    /**
+     * Retrieves the number of user lookups that had to reach the database.
+     *
+     * @return The number of cache misses.
+     */
+    public long getUserMissCount() {
+        return users.getMissCount();
+    }
+
+    // Caches a book read from the database, unless it was not found or a write overlapped the read.
+    private void storeBook(String key, Book book, long generation) {
+        if (book == null) {
+            return;
+        }
+        books.put(key, book, bookTtlNanos);
+        // A write that advanced the generation before this check may have invalidated before the put above.
+        // A write advancing it after this check invalidates after the put, so the entry cannot outlive the write.
+        if (bookGenerations.get(slot(key)) != generation) {
+            books.invalidate(key);
+        }
+    }
+
+    // Caches a user read from the database, unless they were not found or a write overlapped the read.
+    private void storeUser(String key, User user, long generation) {
+        if (user == null) {
+            return;
+        }
+        users.put(key, user, userTtlNanos);
+        if (userGenerations.get(slot(key)) != generation) {
+            users.invalidate(key);
+        }
+    }
+
+    // Removes a written user from the cache, after the write reached the database.
+    private void invalidateUser(String key) {
+        if (key != null) {
+            userGenerations.incrementAndGet(slot(key));
+            users.invalidate(key);
+        }
+    }
+
+    private static int slot(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h >>> 26;
+    }
+}
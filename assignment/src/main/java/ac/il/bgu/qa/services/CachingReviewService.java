@@ -0,0 +1,165 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link ReviewService} that caches the reviews fetched from another review service.
+ * The cache holds a bounded number of books, evicts the least recently used ones first and
+ * expires every entry after a time-to-live. Books without reviews are cached as well, usually
+ * with a shorter time-to-live, so repeated lookups of unreviewed books do not reach the backend.
+ * Failures are never cached. Reviews are always fetched and cached as whole lists, so iterating over
+ * them does not stream from the backend.
+ */
+public class CachingReviewService implements ReviewService {
+
+    // The review service the reviews are fetched from on a cache miss.
+    private final ReviewService delegate;
+    // The cached reviews, keyed by ISBN.
+    private final ExpiringLruCache<String, List<String>> cache;
+    // The time-to-live of books with reviews, in nanoseconds.
+    private final long ttlNanos;
+    // The time-to-live of books without reviews, in nanoseconds.
+    private final long negativeTtlNanos;
+
+    /**
+     * Constructs a new CachingReviewService.
+     *
+     * @param delegate          The review service to fetch reviews from on a cache miss.
+     * @param maxSize           The maximum number of books kept in the cache.
+     * @param ttlMillis         The time reviews of a book stay cached, in milliseconds.
+     * @param negativeTtlMillis The time a book without reviews stays cached, in milliseconds. 0 disables it.
+     */
+    public CachingReviewService(ReviewService delegate, int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this(delegate, maxSize, ttlMillis, negativeTtlMillis, System::nanoTime);
+    }
+
+    // Visible for tests, which control the clock.
+    CachingReviewService(ReviewService delegate, int maxSize, long ttlMillis, long negativeTtlMillis, LongSupplier clock) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (ttlMillis < 0 || negativeTtlMillis < 0) {
+            throw new IllegalArgumentException("Invalid time-to-live.");
+        }
+        this.delegate = delegate;
+        this.cache = new ExpiringLruCache<>(maxSize, clock);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The returned list is read-only. A book without reviews is returned as an empty list.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        List<String> reviews = cache.get(ISBN);
+        if (reviews != null) {
+            return reviews;
+        }
+
+        // On a miss, fetch from the backend and keep an immutable copy of the result.
+        return store(ISBN, delegate.getReviewsForBook(ISBN));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cached books are answered from the cache, and all the missing books are fetched from the backend
+     * in a single batch. Every book is present in the result; a book without reviews is mapped to an empty list.
+     */
+    @Override
+    public Map<String, List<String>> getReviewsForBooks(Collection<String> ISBNs) throws ReviewException {
+        Map<String, List<String>> reviews = new LinkedHashMap<>();
+        Set<String> misses = new LinkedHashSet<>();
+        for (String ISBN : ISBNs) {
+            List<String> cached = cache.get(ISBN);
+            reviews.put(ISBN, cached);
+            if (cached == null) {
+                misses.add(ISBN);
+            }
+        }
+
+        // Fetch every miss at once, caching books the backend left out as books without reviews.
+        if (!misses.isEmpty()) {
+            Map<String, List<String>> fetched = delegate.getReviewsForBooks(misses);
+            for (String ISBN : misses) {
+                reviews.put(ISBN, store(ISBN, fetched == null ? null : fetched.get(ISBN)));
+            }
+        }
+        return reviews;
+    }
+
+    // Caches an immutable copy of the reviews fetched from the backend and returns it.
+    private List<String> store(String ISBN, List<String> fetched) {
+        List<String> reviews;
+        if (fetched == null || fetched.isEmpty()) {
+            reviews = Collections.emptyList();
+            cache.put(ISBN, reviews, negativeTtlNanos);
+        } else {
+            reviews = Collections.unmodifiableList(new ArrayList<>(fetched));
+            cache.put(ISBN, reviews, ttlNanos);
+        }
+        return reviews;
+    }
+
+    /**
+     * Closes the underlying review service. Cached reviews stay available.
+     */
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Removes the cached reviews of a book, so the next lookup reaches the backend.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     */
+    public void invalidate(String ISBN) {
+        cache.invalidate(ISBN);
+    }
+
+    /**
+     * Removes all cached reviews.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Retrieves the number of lookups answered from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    /**
+     * Retrieves the number of lookups that had to reach the backend.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * Retrieves the number of entries removed because the cache was full or the entry expired.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+}
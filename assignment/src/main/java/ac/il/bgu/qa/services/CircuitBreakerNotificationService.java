@@ -0,0 +1,93 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.resilience.CircuitBreaker;
+
+/**
+ * A {@link NotificationService} that guards another notification service with a {@link CircuitBreaker}.
+ * While the breaker is open, notifications fail immediately with a {@link NotificationException}
+ * instead of waiting for the failing backend.
+ */
+public class CircuitBreakerNotificationService implements NotificationService {
+
+    // The guarded notification service.
+    private final NotificationService delegate;
+    // The breaker tracking the health of the guarded service.
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Constructs a new CircuitBreakerNotificationService.
+     *
+     * @param delegate       The notification service to be guarded.
+     * @param circuitBreaker The breaker tracking the health of the notification service.
+     */
+    public CircuitBreakerNotificationService(NotificationService delegate, CircuitBreaker circuitBreaker) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        } else if (circuitBreaker == null) {
+            throw new IllegalArgumentException("Invalid circuit breaker.");
+        }
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NotificationException If the breaker is open, or the guarded service failed.
+     */
+    @Override
+    public void notifyUser(String userId, String message) throws NotificationException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new NotificationException("Notification service unavailable!");
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            delegate.notifyUser(userId, message);
+            succeeded = true;
+        } finally {
+            recordOutcome(succeeded, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The body is handed to the guarded service as is, so a streaming service keeps streaming.
+     *
+     * @throws NotificationException If the breaker is open, or the guarded service failed.
+     */
+    @Override
+    public void notifyUser(String userId, MessageBody body) throws NotificationException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new NotificationException("Notification service unavailable!");
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            delegate.notifyUser(userId, body);
+            succeeded = true;
+        } finally {
+            recordOutcome(succeeded, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Retrieves the breaker guarding the notification service.
+     *
+     * @return The circuit breaker.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    // Reports the outcome of a call to the breaker, from a finally block so that an Error also counts as a failure
+    // and releases the permit of a half-open breaker.
+    private void recordOutcome(boolean succeeded, long durationNanos) {
+        if (succeeded) {
+            circuitBreaker.onSuccess(durationNanos);
+        } else {
+            circuitBreaker.onFailure(durationNanos);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.errors.ReviewServiceUnavailableException;
+import ac.il.bgu.qa.resilience.CircuitBreaker;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link ReviewService} that guards another review service with a {@link CircuitBreaker}.
+ * While the breaker is open, fetches fail immediately with a {@link ReviewServiceUnavailableException}
+ * instead of waiting for the failing backend.
+ */
+public class CircuitBreakerReviewService implements ReviewService {
+
+    // The guarded review service.
+    private final ReviewService delegate;
+    // The breaker tracking the health of the guarded service.
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Constructs a new CircuitBreakerReviewService.
+     *
+     * @param delegate       The review service to be guarded.
+     * @param circuitBreaker The breaker tracking the health of the review service.
+     */
+    public CircuitBreakerReviewService(ReviewService delegate, CircuitBreaker circuitBreaker) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (circuitBreaker == null) {
+            throw new IllegalArgumentException("Invalid circuit breaker.");
+        }
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ReviewServiceUnavailableException If the breaker is open.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new ReviewServiceUnavailableException("Review service unavailable!");
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            List<String> reviews = delegate.getReviewsForBook(ISBN);
+            succeeded = true;
+            return reviews;
+        } finally {
+            recordOutcome(succeeded, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The whole batch counts as a single call of the breaker.
+     *
+     * @throws ReviewServiceUnavailableException If the breaker is open.
+     */
+    @Override
+    public Map<String, List<String>> getReviewsForBooks(Collection<String> ISBNs) throws ReviewException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new ReviewServiceUnavailableException("Review service unavailable!");
+        }
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            Map<String, List<String>> reviews = delegate.getReviewsForBooks(ISBNs);
+            succeeded = true;
+            return reviews;
+        } finally {
+            recordOutcome(succeeded, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Retrieves the breaker guarding the review service.
+     *
+     * @return The circuit breaker.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    // Reports the outcome of a call to the breaker, from a finally block so that an Error also counts as a failure
+    // and releases the permit of a half-open breaker.
+    private void recordOutcome(boolean succeeded, long durationNanos) {
+        if (succeeded) {
+            circuitBreaker.onSuccess(durationNanos);
+        } else {
+            circuitBreaker.onFailure(durationNanos);
+        }
+    }
+}
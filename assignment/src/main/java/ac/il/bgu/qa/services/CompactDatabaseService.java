@@ -0,0 +1,390 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnValidator;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A memory-efficient {@link DatabaseService} for very large catalogs.
+ * <p>
+ * Books are not kept as objects. Each ISBN is packed into a long and mapped to a row number by an
+ * open-addressing hash table of primitives, so lookups never hash a String. The fields of the books
+ * are kept in columns of primitive arrays: titles and authors as ids into a shared {@link StringPool},
+ * the borrowed state as one bit per book and the borrower as the numeric value of their Id.
+ * <p>
+ * {@link #getBookByISBN(String)} returns a new {@link Book} built from the row on every call, so this
+ * service, not the returned object, holds the borrowed state. Therefore {@link #borrowBook(String, String)}
+ * and {@link #returnBook(String)} check the state they change, and fail if another caller changed it first.
+ * Books are read under a shared lock and changed under an exclusive lock.
+ */
+public class CompactDatabaseService implements DatabaseService {
+
+    // Marks a free slot of the hash table; packed ISBNs are never negative.
+    private static final long FREE = -1;
+    // Marks a borrowed book whose borrower is not known.
+    private static final long UNKNOWN_BORROWER = -1;
+
+    // Guards every array below.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // The hash table: the packed ISBN of each slot, and the row of the book in that slot.
+    private long[] keys;
+    private int[] rows;
+
+    // The columns, indexed by row.
+    private int[] titles;
+    private int[] authors;
+    private long[] borrowers;
+    // One bit per row, set if the book is borrowed.
+    private long[] borrowed;
+    // The number of rows in use.
+    private int size;
+
+    // The titles and authors.
+    private final StringPool strings = new StringPool();
+
+    // The registered users, keyed by the numeric value of their Id.
+    private final ConcurrentMap<Long, User> users = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new CompactDatabaseService sized for a small catalog, growing as needed.
+     */
+    public CompactDatabaseService() {
+        this(1024);
+    }
+
+    /**
+     * Constructs a new CompactDatabaseService.
+     *
+     * @param expectedBooks The expected number of books, so the storage does not need to grow up to it.
+     */
+    public CompactDatabaseService(int expectedBooks) {
+        if (expectedBooks <= 0 || expectedBooks > 1 << 29) {
+            throw new IllegalArgumentException("Invalid expected number of books.");
+        }
+        int capacity = Integer.highestOneBit(expectedBooks * 2 - 1) << 1;
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        rows = new int[capacity];
+        titles = new int[expectedBooks];
+        authors = new int[expectedBooks];
+        borrowers = new long[expectedBooks];
+        borrowed = new long[(expectedBooks + 63) >>> 6];
+    }
+
+    /**
+     * {@inheritDoc}
+     * Adding a book with the ISBN of a stored book replaces it.
+     *
+     * @throws IllegalArgumentException If the ISBN is invalid.
+     */
+    @Override
+    public void addBook(String ISBN, Book book) {
+        long key = packedISBN(ISBN);
+        lock.writeLock().lock();
+        try {
+            store(key, book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the Id is not a 12-digit number.
+     */
+    @Override
+    public void registerUser(String id, User user) {
+        users.put(UserId.parse(id).longValue(), user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnValidator.toLong(ISBN);
+        if (key < 0) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int row = find(key);
+            return row < 0 ? null : toBook(key, row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserId.toLong(userId);
+        return key < 0 ? null : users.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws BookNotFoundException        If the book is not stored.
+     * @throws BookAlreadyBorrowedException If the book is already borrowed.
+     */
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        long key = packedISBN(ISBN);
+        long borrower = UserId.parse(userId).longValue();
+        lock.writeLock().lock();
+        try {
+            int row = find(key);
+            if (row < 0) {
+                throw new BookNotFoundException("Book not found!");
+            } else if (isBorrowed(row)) {
+                throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            }
+            borrowed[row >>> 6] |= 1L << (row & 63);
+            borrowers[row] = borrower;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws BookNotFoundException    If the book is not stored.
+     * @throws BookNotBorrowedException If the book is not borrowed.
+     */
+    @Override
+    public void returnBook(String ISBN) {
+        long key = packedISBN(ISBN);
+        lock.writeLock().lock();
+        try {
+            int row = find(key);
+            if (row < 0) {
+                throw new BookNotFoundException("Book not found!");
+            } else if (!isBorrowed(row)) {
+                throw new BookNotBorrowedException("Book wasn't borrowed!");
+            }
+            borrowed[row >>> 6] &= ~(1L << (row & 63));
+            borrowers[row] = UNKNOWN_BORROWER;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * All the books are stored under a single acquisition of the lock.
+     *
+     * @throws IllegalArgumentException If any ISBN is invalid, in which case no book is stored.
+     */
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        long[] packed = new long[books.size()];
+        Book[] values = new Book[books.size()];
+        int i = 0;
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            packed[i] = packedISBN(entry.getKey());
+            values[i++] = entry.getValue();
+        }
+        lock.writeLock().lock();
+        try {
+            for (i = 0; i < packed.length; i++) {
+                store(packed[i], values[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * All the books are read under a single acquisition of the lock.
+     */
+    @Override
+    public Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> books = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String ISBN : ISBNs) {
+                long key = IsbnValidator.toLong(ISBN);
+                int row = key < 0 ? -1 : find(key);
+                if (row >= 0) {
+                    books.put(ISBN, toBook(key, row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return books;
+    }
+
+    /**
+     * Fetches the Id of the user currently borrowing a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrower, or null if the book is not borrowed or its borrower is not known.
+     */
+    public String getBorrowerId(String ISBN) {
+        long key = IsbnValidator.toLong(ISBN);
+        if (key < 0) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int row = find(key);
+            return row < 0 || !isBorrowed(row) || borrowers[row] == UNKNOWN_BORROWER
+                    ? null : UserId.of(borrowers[row]).toString();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of books stored in the database.
+     *
+     * @return The number of books.
+     */
+    public int getBookCount() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimates the heap used by the books, excluding users.
+     *
+     * @return The number of bytes held by the arrays storing the books.
+     */
+    public long getMemoryUsage() {
+        lock.readLock().lock();
+        try {
+            return 8L * keys.length + 4L * rows.length + 4L * titles.length + 4L * authors.length
+                    + 8L * borrowers.length + 8L * borrowed.length + strings.memoryUsage();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Finds the row of a packed ISBN, or -1. Requires the lock.
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return rows[slot];
+            } else if (keys[slot] == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    // Stores a book in its existing row, or in a new row. Requires the write lock.
+    private void store(long key, Book book) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int row;
+        if (keys[slot] == key) {
+            row = rows[slot];
+        } else {
+            if (size == titles.length) {
+                growColumns();
+            }
+            row = size++;
+            keys[slot] = key;
+            rows[slot] = row;
+        }
+
+        titles[row] = strings.intern(book.getTitle());
+        authors[row] = strings.intern(book.getAuthor());
+        String borrowerId = book.getBorrowerId();
+        if (book.isBorrowed()) {
+            borrowed[row >>> 6] |= 1L << (row & 63);
+            borrowers[row] = borrowerId == null ? UNKNOWN_BORROWER : UserId.parse(borrowerId).longValue();
+        } else {
+            borrowed[row >>> 6] &= ~(1L << (row & 63));
+            borrowers[row] = UNKNOWN_BORROWER;
+        }
+
+        // Keep the table at most half full, so probe sequences stay short.
+        if (size * 2 > keys.length) {
+            growTable();
+        }
+    }
+
+    // Creates a book from a row. Requires the lock.
+    private Book toBook(long key, int row) {
+        Book book = new Book(IsbnValidator.toString(key), strings.get(titles[row]), strings.get(authors[row]));
+        if (isBorrowed(row)) {
+            if (borrowers[row] == UNKNOWN_BORROWER) {
+                book.borrow();
+            } else {
+                book.tryBorrow(UserId.of(borrowers[row]).toString());
+            }
+        }
+        return book;
+    }
+
+    private boolean isBorrowed(int row) {
+        return (borrowed[row >>> 6] & (1L << (row & 63))) != 0;
+    }
+
+    // Doubles the capacity of the columns.
+    private void growColumns() {
+        int capacity = titles.length * 2;
+        titles = Arrays.copyOf(titles, capacity);
+        authors = Arrays.copyOf(authors, capacity);
+        borrowers = Arrays.copyOf(borrowers, capacity);
+        borrowed = Arrays.copyOf(borrowed, (capacity + 63) >>> 6);
+    }
+
+    // Doubles the hash table, placing every key again.
+    private void growTable() {
+        long[] oldKeys = keys;
+        int[] oldRows = rows;
+        keys = new long[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        rows = new int[oldRows.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i], mask);
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                rows[slot] = oldRows[i];
+            }
+        }
+    }
+
+    // Spreads the bits of a packed ISBN, whose low digits alone would cluster, to pick its first slot.
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // Packs a valid ISBN, rejecting an invalid one.
+    private static long packedISBN(String ISBN) {
+        long key = IsbnValidator.toLong(ISBN);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+}
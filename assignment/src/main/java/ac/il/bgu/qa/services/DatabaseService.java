@@ -3,6 +3,10 @@ package ac.il.bgu.qa.services;
 import ac.il.bgu.qa.Book;
 import ac.il.bgu.qa.User;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Provides an interface for services responsible for managing the database of books and users.
  */
@@ -56,4 +60,64 @@ public interface DatabaseService {
      * @param ISBN The International Standard Book Number of the book to be returned.
      */
     void returnBook(String ISBN);
+
+    /**
+     * Adds many books to the database in a single call.
+     * Implementations backed by a remote store should override this to use one round trip.
+     *
+     * @param books The books to be added, keyed by their ISBN.
+     */
+    default void addBooks(Map<String, Book> books) {
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            addBook(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Fetches many books from the database in a single call.
+     * Implementations backed by a remote store should override this to use one round trip.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books.
+     * @return The books that exist in the database, keyed by their ISBN. Missing books are left out.
+     */
+    default Map<String, Book> getBooksByISBN(Collection<String> ISBNs) {
+        Map<String, Book> books = new HashMap<>();
+        for (String ISBN : ISBNs) {
+            Book book = getBookByISBN(ISBN);
+            if (book != null) {
+                books.put(ISBN, book);
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Registers many users with the database in a single call.
+     * Implementations backed by a remote store should override this to use one round trip.
+     *
+     * @param users The users to be registered, keyed by their Id.
+     */
+    default void registerUsers(Map<String, User> users) {
+        for (Map.Entry<String, User> entry : users.entrySet()) {
+            registerUser(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Fetches many users from the database in a single call.
+     * Implementations backed by a remote store should override this to use one round trip.
+     *
+     * @param userIds The unique identifiers of the users.
+     * @return The users that are registered in the database, keyed by their Id. Missing users are left out.
+     */
+    default Map<String, User> getUsersById(Collection<String> userIds) {
+        Map<String, User> users = new HashMap<>();
+        for (String userId : userIds) {
+            User user = getUserById(userId);
+            if (user != null) {
+                users.put(userId, user);
+            }
+        }
+        return users;
+    }
 }
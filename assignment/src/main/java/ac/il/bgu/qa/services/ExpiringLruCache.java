@@ -0,0 +1,203 @@
+package ac.il.bgu.qa.services;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded, thread-safe cache with least-recently-used eviction and a time-to-live per entry.
+ * The cache is split into segments, each guarded by its own lock, so concurrent lookups of
+ * different keys rarely contend. Eviction order is least-recently-used within a segment.
+ * Keys must not be null.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+class ExpiringLruCache<K, V> {
+
+    // The segments of the cache, selected by the hash of the key.
+    private final Segment<K, V>[] segments;
+    // The source of the current time, in nanoseconds.
+    private final LongSupplier clock;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructs a new ExpiringLruCache.
+     *
+     * @param maxSize The maximum number of entries kept in the cache.
+     * @param clock   The source of the current time, in nanoseconds.
+     */
+    ExpiringLruCache(int maxSize, LongSupplier clock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size.");
+        }
+        // Use a single segment for small caches, so the LRU order stays exact.
+        int segmentCount = maxSize < 1024 ? 1 : 16;
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int capacity = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment<>(capacity, evictions);
+        }
+        this.segments = segments;
+        this.clock = clock;
+    }
+
+    /**
+     * Fetches a value from the cache.
+     *
+     * @param key The key of the value.
+     * @return The cached value, or null if it is missing or has expired.
+     */
+    V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = clock.getAsLong();
+        synchronized (segment) {
+            CachedValue<V> entry = segment.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAt < 0) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                segment.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores a value in the cache, evicting the least recently used entry if the cache is full.
+     *
+     * @param key      The key of the value.
+     * @param value    The value to be stored.
+     * @param ttlNanos The time the value stays valid, in nanoseconds.
+     */
+    void put(K key, V value, long ttlNanos) {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        CachedValue<V> entry = new CachedValue<>(value, clock.getAsLong() + ttlNanos);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes a value from the cache.
+     *
+     * @param key The key of the value.
+     */
+    void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes all values from the cache.
+     */
+    void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes every expired entry from the cache.
+     */
+    void purgeExpired() {
+        long now = clock.getAsLong();
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                Iterator<CachedValue<V>> iterator = segment.values().iterator();
+                while (iterator.hasNext()) {
+                    if (now - iterator.next().expiresAt >= 0) {
+                        iterator.remove();
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of entries currently in the cache, including expired ones not yet removed.
+     *
+     * @return The number of entries.
+     */
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Invalid key.");
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    // A cached value with its expiration time.
+    private static final class CachedValue<V> {
+        final V value;
+        final long expiresAt;
+
+        CachedValue(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // A part of the cache kept in access order, so the eldest entry is the least recently used one.
+    private static final class Segment<K, V> extends LinkedHashMap<K, CachedValue<V>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final AtomicLong evictions;
+
+        Segment(int capacity, AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
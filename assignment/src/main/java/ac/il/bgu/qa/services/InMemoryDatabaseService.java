@@ -0,0 +1,182 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread-safe, in-memory implementation of {@link DatabaseService}.
+ * Books, users and the borrow ledger are kept in concurrent maps, so lookups never block.
+ * Borrowing and returning are serialized per ISBN through a fixed set of lock stripes,
+ * so operations on different books rarely contend with each other.
+ */
+public class InMemoryDatabaseService implements DatabaseService {
+
+    // Books stored by their ISBN.
+    private final ConcurrentMap<String, Book> books = new ConcurrentHashMap<>();
+
+    // Users stored by the numeric value of their Id.
+    private final ConcurrentMap<Long, User> users = new ConcurrentHashMap<>();
+
+    // The borrow ledger, mapping the ISBN of every borrowed book to the Id of its borrower.
+    private final ConcurrentMap<String, String> borrowLedger = new ConcurrentHashMap<>();
+
+    // The locks guarding borrow and return operations, selected by the hash of the ISBN.
+    private final Object[] stripes;
+
+    /**
+     * Constructs a new InMemoryDatabaseService with a number of lock stripes
+     * suited to the number of available processors.
+     */
+    public InMemoryDatabaseService() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a new InMemoryDatabaseService.
+     *
+     * @param concurrencyLevel The expected number of concurrently borrowing threads,
+     *                         rounded up to a power of two to size the lock stripes.
+     */
+    public InMemoryDatabaseService(int concurrencyLevel) {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("Invalid concurrency level.");
+        }
+        int size = Integer.highestOneBit(Math.min(concurrencyLevel, 1 << 16));
+        if (size < concurrencyLevel) {
+            size <<= 1;
+        }
+        stripes = new Object[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        books.put(ISBN, book);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the Id is not a 12-digit number.
+     */
+    @Override
+    public void registerUser(String id, User user) {
+        users.put(UserId.parse(id).longValue(), user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return ISBN == null ? null : books.get(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserId.toLong(userId);
+        return key < 0 ? null : users.get(key);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        synchronized (stripeFor(ISBN)) {
+            borrowLedger.put(ISBN, userId);
+
+            // Mark the stored book as borrowed, unless the caller already did so.
+            Book book = books.get(ISBN);
+            if (book != null) {
+                book.tryBorrow(userId);
+            }
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        synchronized (stripeFor(ISBN)) {
+            borrowLedger.remove(ISBN);
+
+            // Mark the stored book as returned, unless the caller already did so.
+            Book book = books.get(ISBN);
+            if (book != null) {
+                book.tryReturn();
+            }
+        }
+    }
+
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        this.books.putAll(books);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Either all users are registered or, if any Id is invalid, none of them.
+     *
+     * @throws IllegalArgumentException If any Id is not a 12-digit number.
+     */
+    @Override
+    public void registerUsers(Map<String, User> users) {
+        Map<Long, User> parsed = new HashMap<>(users.size() * 2);
+        for (Map.Entry<String, User> entry : users.entrySet()) {
+            parsed.put(UserId.parse(entry.getKey()).longValue(), entry.getValue());
+        }
+        this.users.putAll(parsed);
+    }
+
+    /**
+     * Fetches the Id of the user currently borrowing a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrower, or null if the book is not borrowed.
+     */
+    public String getBorrowerId(String ISBN) {
+        return ISBN == null ? null : borrowLedger.get(ISBN);
+    }
+
+    /**
+     * Retrieves the number of books stored in the database.
+     *
+     * @return The number of books.
+     */
+    public int getBookCount() {
+        return books.size();
+    }
+
+    /**
+     * Retrieves the number of users registered in the database.
+     *
+     * @return The number of users.
+     */
+    public int getUserCount() {
+        return users.size();
+    }
+
+    // Visits every stored book, keyed by ISBN. Concurrent changes may or may not be seen.
+    void forEachBook(BiConsumer<String, Book> action) {
+        books.forEach(action);
+    }
+
+    // Visits every registered user, keyed by Id. Concurrent changes may or may not be seen.
+    void forEachUser(BiConsumer<String, User> action) {
+        users.forEach((id, user) -> action.accept(UserId.of(id).toString(), user));
+    }
+
+    // Visits every entry of the borrow ledger, from ISBN to borrower Id. Concurrent changes may or may not be seen.
+    void forEachBorrowing(BiConsumer<String, String> action) {
+        borrowLedger.forEach(action);
+    }
+
+    // Selects the lock stripe guarding the given ISBN.
+    private Object stripeFor(String ISBN) {
+        int h = ISBN.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,366 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.IsbnValidator;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link DatabaseService} serving the book catalog straight from a memory-mapped snapshot file.
+ * <p>
+ * The snapshot holds one fixed-size record per book, sorted by ISBN packed as a long, with the title and
+ * author stored once each in a shared string pool and the borrowed state of all books in a bitset.
+ * Opening a snapshot only maps the file, so startup does not depend on the size of the catalog, and the
+ * catalog stays off the heap. A lookup binary-searches the mapped records and creates the {@link Book}
+ * the first time it is requested; from then on the same object is returned, so its borrowed state is kept.
+ * <p>
+ * Added books, users and borrowings are kept in memory on top of the snapshot and are not written back to it.
+ * Books are stored under their 13-digit ISBN, so hyphenated and plain forms of an ISBN find the same book,
+ * and books loaded from the snapshot carry the plain form.
+ */
+public class MappedCatalogDatabaseService implements DatabaseService, AutoCloseable {
+
+    // Identifies a catalog snapshot file ("LBC1") and the version of its format.
+    private static final int MAGIC = 0x4C424331;
+    private static final int VERSION = 1;
+
+    // The size of the header, and of the record of every book: the packed ISBN, then the title and author references.
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 16;
+
+    // The open snapshot file.
+    private final FileChannel channel;
+    // The mapped header, book records, borrowed bitset and string pool offsets.
+    private final ByteBuffer index;
+    // The mapped UTF-8 bytes of the pooled strings.
+    private final ByteBuffer strings;
+    // The number of books in the snapshot.
+    private final int bookCount;
+    // The positions of the borrowed bitset and of the string offsets in the index.
+    private final int bitsetPosition;
+    private final int offsetsPosition;
+
+    // The books created from the snapshot or added since it was opened, keyed by packed ISBN.
+    private final ConcurrentMap<Long, Book> books = new ConcurrentHashMap<>();
+    // The registered users, keyed by the numeric value of their Id.
+    private final ConcurrentMap<Long, User> users = new ConcurrentHashMap<>();
+    // The borrow ledger of the borrowings made since the snapshot was opened, from packed ISBN to borrower Id.
+    private final ConcurrentMap<Long, String> borrowLedger = new ConcurrentHashMap<>();
+
+    /**
+     * Opens a catalog snapshot written by {@link #writeSnapshot(Path, Collection)}.
+     *
+     * @param file The snapshot file.
+     * @throws UncheckedIOException If the file cannot be read or is not a valid catalog snapshot.
+     */
+    public MappedCatalogDatabaseService(Path file) {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_SIZE, channel.size()));
+                if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException("Invalid catalog snapshot.");
+                }
+                bookCount = header.getInt(8);
+                int poolSize = header.getInt(12);
+                long stringsSize = header.getLong(16);
+
+                long bitsetStart = HEADER_SIZE + (long) bookCount * RECORD_SIZE;
+                long offsetsStart = bitsetStart + bitsetWords(bookCount) * 8L;
+                long indexSize = offsetsStart + (poolSize + 1L) * 8;
+                if (bookCount < 0 || poolSize < 0 || stringsSize < 0 || indexSize + stringsSize != channel.size()) {
+                    throw new IOException("Invalid catalog snapshot.");
+                } else if (indexSize > Integer.MAX_VALUE || stringsSize > Integer.MAX_VALUE) {
+                    throw new IOException("Catalog snapshot too large to map.");
+                }
+                bitsetPosition = (int) bitsetStart;
+                offsetsPosition = (int) offsetsStart;
+                index = channel.map(FileChannel.MapMode.READ_ONLY, 0, indexSize);
+                strings = channel.map(FileChannel.MapMode.READ_ONLY, indexSize, stringsSize);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a catalog snapshot of books, replacing the file atomically once it is complete.
+     *
+     * @param file  The snapshot file.
+     * @param books The books of the catalog, with their borrowed state.
+     * @throws IllegalArgumentException If a book has an invalid ISBN, no title or author, or two books have the same ISBN.
+     * @throws IOException              If the file cannot be written.
+     */
+    public static void writeSnapshot(Path file, Collection<Book> books) throws IOException {
+        // Sort the books by packed ISBN, as the reader binary-searches them.
+        long[] ISBNs = new long[books.size()];
+        Book[] sorted = books.toArray(new Book[0]);
+        Map<Long, Book> byISBN = new HashMap<>(sorted.length * 2);
+        for (int i = 0; i < sorted.length; i++) {
+            ISBNs[i] = sorted[i] == null ? -1 : IsbnValidator.toLong(sorted[i].getISBN());
+            if (ISBNs[i] < 0) {
+                throw new IllegalArgumentException("Invalid ISBN.");
+            } else if (sorted[i].getTitle() == null || sorted[i].getAuthor() == null) {
+                throw new IllegalArgumentException("Invalid book.");
+            } else if (byISBN.put(ISBNs[i], sorted[i]) != null) {
+                throw new IllegalArgumentException("Book already exists.");
+            }
+        }
+        Arrays.sort(ISBNs);
+
+        // Store every distinct title and author once.
+        Map<String, Integer> poolIds = new HashMap<>();
+        List<byte[]> pool = new ArrayList<>();
+        int[] references = new int[ISBNs.length * 2];
+        for (int i = 0; i < ISBNs.length; i++) {
+            Book book = byISBN.get(ISBNs[i]);
+            references[2 * i] = intern(book.getTitle(), poolIds, pool);
+            references[2 * i + 1] = intern(book.getAuthor(), poolIds, pool);
+        }
+        long stringsSize = 0;
+        for (byte[] string : pool) {
+            stringsSize += string.length;
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(ISBNs.length);
+            data.writeInt(pool.size());
+            data.writeLong(stringsSize);
+            data.writeLong(0);
+
+            for (int i = 0; i < ISBNs.length; i++) {
+                data.writeLong(ISBNs[i]);
+                data.writeInt(references[2 * i]);
+                data.writeInt(references[2 * i + 1]);
+            }
+
+            long[] bitset = new long[bitsetWords(ISBNs.length)];
+            for (int i = 0; i < ISBNs.length; i++) {
+                if (byISBN.get(ISBNs[i]).isBorrowed()) {
+                    bitset[i >>> 6] |= 1L << (i & 63);
+                }
+            }
+            for (long word : bitset) {
+                data.writeLong(word);
+            }
+
+            long offset = 0;
+            for (byte[] string : pool) {
+                data.writeLong(offset);
+                offset += string.length;
+            }
+            data.writeLong(offset);
+            for (byte[] string : pool) {
+                data.write(string);
+            }
+            data.flush();
+            out.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The book is kept in memory and takes precedence over the snapshot.
+     *
+     * @throws IllegalArgumentException If the ISBN is invalid.
+     */
+    @Override
+    public void addBook(String ISBN, Book book) {
+        books.put(packedISBN(ISBN), book);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the Id is not a 12-digit number.
+     */
+    @Override
+    public void registerUser(String id, User user) {
+        users.put(UserId.parse(id).longValue(), user);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = IsbnValidator.toLong(ISBN);
+        if (key < 0) {
+            return null;
+        }
+        Book book = books.get(key);
+        if (book != null) {
+            return book;
+        }
+
+        // Create the book from the snapshot on its first lookup, once even under concurrent lookups.
+        int position = find(key);
+        return position < 0 ? null : books.computeIfAbsent(key, k -> materialize(position, k));
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = UserId.toLong(userId);
+        return key < 0 ? null : users.get(key);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        long key = packedISBN(ISBN);
+        Book book = getBookByISBN(ISBN);
+        borrowLedger.compute(key, (k, current) -> {
+            // Mark the book as borrowed, unless the caller already did so.
+            if (book != null) {
+                book.tryBorrow(userId);
+            }
+            return userId;
+        });
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        long key = packedISBN(ISBN);
+        Book book = getBookByISBN(ISBN);
+        borrowLedger.compute(key, (k, current) -> {
+            // Mark the book as returned, unless the caller already did so.
+            if (book != null) {
+                book.tryReturn();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Fetches the Id of the user currently borrowing a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrower, or null if the book is not borrowed, or was borrowed before the snapshot.
+     */
+    public String getBorrowerId(String ISBN) {
+        long key = IsbnValidator.toLong(ISBN);
+        return key < 0 ? null : borrowLedger.get(key);
+    }
+
+    /**
+     * Retrieves the number of books in the snapshot.
+     *
+     * @return The number of books in the snapshot.
+     */
+    public int getSnapshotBookCount() {
+        return bookCount;
+    }
+
+    /**
+     * Retrieves the number of books held on the heap, either looked up or added since the snapshot was opened.
+     *
+     * @return The number of books in memory.
+     */
+    public int getMaterializedBookCount() {
+        return books.size();
+    }
+
+    /**
+     * Closes the snapshot file. The mapping itself is released once it is no longer reachable.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Binary-searches the sorted records for a packed ISBN, returning its position or -1.
+    private int find(long key) {
+        int low = 0;
+        int high = bookCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long current = index.getLong(HEADER_SIZE + middle * RECORD_SIZE);
+            if (current < key) {
+                low = middle + 1;
+            } else if (current > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // Creates the book stored at a position of the snapshot.
+    private Book materialize(int position, long key) {
+        int record = HEADER_SIZE + position * RECORD_SIZE;
+        Book book = new Book(IsbnValidator.toString(key), string(index.getInt(record + 8)), string(index.getInt(record + 12)));
+        long word = index.getLong(bitsetPosition + (position >>> 6) * 8);
+        if ((word & (1L << (position & 63))) != 0) {
+            book.borrow();
+        }
+        return book;
+    }
+
+    // Reads a string of the pool.
+    private String string(int reference) {
+        int start = (int) index.getLong(offsetsPosition + reference * 8);
+        int end = (int) index.getLong(offsetsPosition + (reference + 1) * 8);
+        byte[] bytes = new byte[end - start];
+        // Read through a duplicate, as the position of the shared buffer must not change.
+        ByteBuffer view = strings.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Packs a valid ISBN, rejecting an invalid one.
+    private static long packedISBN(String ISBN) {
+        long key = IsbnValidator.toLong(ISBN);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+
+    // Returns the pool reference of a string, adding it to the pool if needed.
+    private static int intern(String value, Map<String, Integer> poolIds, List<byte[]> pool) {
+        Integer id = poolIds.get(value);
+        if (id == null) {
+            id = pool.size();
+            poolIds.put(value, id);
+            pool.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+    // The number of longs needed for one bit per book.
+    private static int bitsetWords(int count) {
+        return (count + 63) >>> 6;
+    }
+}
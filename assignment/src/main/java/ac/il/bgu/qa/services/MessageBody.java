@@ -0,0 +1,20 @@
+package ac.il.bgu.qa.services;
+
+import java.io.IOException;
+
+/**
+ * The content of a notification message that is written out piece by piece instead of being held as one String.
+ * This lets a {@link NotificationService} stream a long message straight to its destination.
+ * A body may be written more than once, for example when a failed notification is retried.
+ */
+@FunctionalInterface
+public interface MessageBody {
+
+    /**
+     * Writes the content of the message.
+     *
+     * @param out The destination of the message.
+     * @throws IOException If the destination fails.
+     */
+    void writeTo(Appendable out) throws IOException;
+}
@@ -2,6 +2,8 @@ package ac.il.bgu.qa.services;
 
 import ac.il.bgu.qa.errors.NotificationException;
 
+import java.io.IOException;
+
 /**
  * Provides an interface for services responsible for notifying users.
  */
@@ -15,4 +17,24 @@ public interface NotificationService {
      * @throws NotificationException If there's an issue sending the notification.
      */
     void notifyUser(String userId, String message) throws NotificationException;
+
+    /**
+     * Sends a notification message, written piece by piece, to a specific user.
+     * Services able to stream a message to their destination should override this.
+     * By default, the message is rendered to a String and sent with {@link #notifyUser(String, String)}.
+     *
+     * @param userId The unique identifier of the user to be notified.
+     * @param body   The content of the notification message.
+     * @throws NotificationException If there's an issue sending the notification.
+     */
+    default void notifyUser(String userId, MessageBody body) throws NotificationException {
+        StringBuilder message = new StringBuilder();
+        try {
+            body.writeTo(message);
+        } catch (IOException e) {
+            // A StringBuilder never fails, so this only happens if the body itself fails.
+            throw new NotificationException("Notification failed!");
+        }
+        notifyUser(userId, message.toString());
+    }
 }
@@ -2,7 +2,12 @@ package ac.il.bgu.qa.services;
 
 import ac.il.bgu.qa.errors.ReviewException;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides an interface for services that retrieve book reviews.
@@ -18,6 +23,37 @@ public interface ReviewService {
      */
     List<String> getReviewsForBook(String ISBN) throws ReviewException;
 
+    /**
+     * Fetches the reviews for a book one by one, so a book with many reviews does not have to be held in memory.
+     * Services backed by a paged remote API should override this to fetch further pages only as they are needed.
+     * The iterator must be consumed before the review service is closed.
+     *
+     * @param ISBN The International Standard Book Number (ISBN) of the book.
+     * @return An iterator over the reviews associated with the given book's ISBN.
+     * @throws ReviewException If there's an issue fetching the reviews.
+     */
+    default Iterator<String> iterateReviewsForBook(String ISBN) throws ReviewException {
+        List<String> reviews = getReviewsForBook(ISBN);
+        return reviews == null ? Collections.<String>emptyIterator() : reviews.iterator();
+    }
+
+    /**
+     * Fetches the reviews of many books in a single call.
+     * Implementations backed by a remote service should override this to use one round trip.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books.
+     * @return The reviews of each book, keyed by ISBN in the order the ISBNs were given.
+     *         A book without reviews is mapped to an empty list or left out.
+     * @throws ReviewException If there's an issue fetching the reviews.
+     */
+    default Map<String, List<String>> getReviewsForBooks(Collection<String> ISBNs) throws ReviewException {
+        Map<String, List<String>> reviews = new LinkedHashMap<>();
+        for (String ISBN : ISBNs) {
+            reviews.put(ISBN, getReviewsForBook(ISBN));
+        }
+        return reviews;
+    }
+
     /**
      * Closes the review service, performing any necessary cleanup operations.
      */
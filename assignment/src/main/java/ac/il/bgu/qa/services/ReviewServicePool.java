@@ -0,0 +1,212 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewServiceUnavailableException;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A pool of {@link ReviewService} instances, so a connection to the review backend is reused by many fetches
+ * instead of being set up and closed for every one of them.
+ * <p>
+ * A caller leases an instance, uses it, and hands it back with {@link #release(ReviewService)}, or with
+ * {@link #invalidate(ReviewService)} if it failed and should not be reused. The number of leased instances
+ * is capped, so the backend never sees more than the maximum number of concurrent connections. Idle instances
+ * are checked with a validator before being leased again, and broken ones are closed and replaced.
+ */
+public class ReviewServicePool implements AutoCloseable {
+
+    // Creates new review service instances.
+    private final Supplier<ReviewService> factory;
+    // Checks that an idle instance can still be used.
+    private final Predicate<ReviewService> validator;
+    // Limits the number of leased instances.
+    private final Semaphore permits;
+    // How long a lease waits for a free instance, in milliseconds.
+    private final long leaseTimeoutMillis;
+    // Whether released instances are closed instead of being kept for reuse.
+    private final boolean closeOnRelease;
+    // The instances ready to be leased, most recently used first.
+    private final Deque<ReviewService> idle = new ConcurrentLinkedDeque<>();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new ReviewServicePool.
+     *
+     * @param factory            Creates a new, connected review service instance.
+     * @param maxSize            The maximum number of instances leased at the same time.
+     * @param validator          Checks that an idle instance can still be used before it is leased again.
+     * @param leaseTimeoutMillis How long a lease waits for a free instance, in milliseconds.
+     */
+    public ReviewServicePool(Supplier<ReviewService> factory, int maxSize, Predicate<ReviewService> validator,
+                             long leaseTimeoutMillis) {
+        this(factory, maxSize, validator, leaseTimeoutMillis, false);
+    }
+
+    private ReviewServicePool(Supplier<ReviewService> factory, int maxSize, Predicate<ReviewService> validator,
+                              long leaseTimeoutMillis, boolean closeOnRelease) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Invalid review service factory.");
+        } else if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid pool size.");
+        } else if (validator == null) {
+            throw new IllegalArgumentException("Invalid validator.");
+        } else if (leaseTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid lease timeout.");
+        }
+        this.factory = factory;
+        this.permits = new Semaphore(maxSize, true);
+        this.validator = validator;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+        this.closeOnRelease = closeOnRelease;
+    }
+
+    /**
+     * Creates a pool around a single review service that is closed after every use,
+     * which is how the library used a review service before pooling.
+     *
+     * @param reviewService The review service to be leased.
+     * @return The pool.
+     */
+    public static ReviewServicePool unpooled(ReviewService reviewService) {
+        return new ReviewServicePool(() -> reviewService, Integer.MAX_VALUE, service -> true, 0, true);
+    }
+
+    /**
+     * Leases a review service instance, waiting for one to become free if the maximum is reached.
+     *
+     * @return A review service instance, which must be handed back with release or invalidate.
+     * @throws ReviewServiceUnavailableException If the pool is closed, no instance became free in time,
+     *                                           or a new instance could not be created.
+     */
+    public ReviewService lease() {
+        if (closed) {
+            throw new ReviewServiceUnavailableException("Review service unavailable!");
+        }
+        try {
+            if (!permits.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new ReviewServiceUnavailableException("Review service unavailable!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReviewServiceUnavailableException("Review service unavailable!");
+        }
+
+        try {
+            // Reuse the most recently used idle instance that is still valid.
+            ReviewService service;
+            while ((service = idle.pollFirst()) != null) {
+                if (isValid(service)) {
+                    return service;
+                }
+                discard(service);
+            }
+
+            // No idle instance is available, so connect a new one.
+            service = factory.get();
+            if (service == null) {
+                throw new ReviewServiceUnavailableException("Review service unavailable!");
+            }
+            created.incrementAndGet();
+            return service;
+        } catch (RuntimeException e) {
+            permits.release();
+            if (e instanceof ReviewServiceUnavailableException) {
+                throw e;
+            }
+            throw new ReviewServiceUnavailableException("Review service unavailable!");
+        }
+    }
+
+    /**
+     * Hands back a leased instance, so it can be reused.
+     *
+     * @param service The leased instance.
+     */
+    public void release(ReviewService service) {
+        if (closeOnRelease || closed) {
+            service.close();
+        } else {
+            idle.offerFirst(service);
+            // The pool may have been closed while the instance was being handed back.
+            if (closed && idle.remove(service)) {
+                service.close();
+            }
+        }
+        permits.release();
+    }
+
+    /**
+     * Hands back a leased instance that failed, so it is closed instead of being reused.
+     *
+     * @param service The leased instance.
+     */
+    public void invalidate(ReviewService service) {
+        discard(service);
+        permits.release();
+    }
+
+    /**
+     * Retrieves the number of instances ready to be leased.
+     *
+     * @return The number of idle instances.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Retrieves the number of instances created by the pool.
+     *
+     * @return The number of created instances.
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Retrieves the number of instances closed because they failed or did not pass validation.
+     *
+     * @return The number of discarded instances.
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * Closes all idle instances. Leased instances are closed when they are handed back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ReviewService service;
+        while ((service = idle.pollFirst()) != null) {
+            service.close();
+        }
+    }
+
+    private boolean isValid(ReviewService service) {
+        try {
+            return validator.test(service);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void discard(ReviewService service) {
+        discarded.incrementAndGet();
+        try {
+            service.close();
+        } catch (RuntimeException e) {
+            // The instance is dropped either way.
+        }
+    }
+}
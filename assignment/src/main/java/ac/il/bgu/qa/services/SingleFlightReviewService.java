@@ -0,0 +1,169 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ReviewService} that coalesces concurrent fetches of the same book from another review service.
+ * <p>
+ * The first caller asking for a book fetches it from the backend; callers asking for the same book while
+ * that fetch is in flight wait for it and receive its result, or the exception it failed with, instead of
+ * calling the backend again. Once the fetch completes, the next caller starts a new one, so results are
+ * never reused beyond the callers that overlapped with the fetch; combine with a {@link CachingReviewService}
+ * for that. Returned lists are read-only, since they may be shared between callers. For the same reason,
+ * {@link #iterateReviewsForBook(String)} iterates over a list fetched as a whole rather than streaming.
+ */
+public class SingleFlightReviewService implements ReviewService {
+
+    // The review service the reviews are fetched from.
+    private final ReviewService delegate;
+    // The fetches in flight, keyed by ISBN.
+    private final ConcurrentMap<String, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+    // The number of fetches answered by a fetch already in flight.
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Constructs a new SingleFlightReviewService.
+     *
+     * @param delegate The review service to fetch reviews from.
+     */
+    public SingleFlightReviewService(ReviewService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * {@inheritDoc}
+     * If the book is already being fetched, waits for that fetch instead of starting another one.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        CompletableFuture<List<String>> fetch = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = inFlight.putIfAbsent(ISBN, fetch);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        try {
+            List<String> reviews = readOnly(delegate.getReviewsForBook(ISBN));
+            fetch.complete(reviews);
+            return reviews;
+        } catch (RuntimeException | Error e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(ISBN, fetch);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Books already being fetched are taken from those fetches, and all the other books are fetched
+     * from the backend in a single batch, which concurrent callers may join book by book.
+     */
+    @Override
+    public Map<String, List<String>> getReviewsForBooks(Collection<String> ISBNs) throws ReviewException {
+        Map<String, CompletableFuture<List<String>>> fetches = new LinkedHashMap<>();
+        Map<String, CompletableFuture<List<String>>> owned = new LinkedHashMap<>();
+        for (String ISBN : ISBNs) {
+            if (fetches.containsKey(ISBN)) {
+                continue;
+            }
+            CompletableFuture<List<String>> fetch = new CompletableFuture<>();
+            CompletableFuture<List<String>> existing = inFlight.putIfAbsent(ISBN, fetch);
+            if (existing != null) {
+                coalesced.increment();
+                fetches.put(ISBN, existing);
+            } else {
+                fetches.put(ISBN, fetch);
+                owned.put(ISBN, fetch);
+            }
+        }
+
+        // Fetch the books no one else is fetching at once, completing their fetches for the callers who joined them.
+        if (!owned.isEmpty()) {
+            try {
+                Map<String, List<String>> fetched = delegate.getReviewsForBooks(owned.keySet());
+                for (Map.Entry<String, CompletableFuture<List<String>>> entry : owned.entrySet()) {
+                    entry.getValue().complete(readOnly(fetched == null ? null : fetched.get(entry.getKey())));
+                }
+            } catch (RuntimeException | Error e) {
+                for (CompletableFuture<List<String>> fetch : owned.values()) {
+                    fetch.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<String, CompletableFuture<List<String>>> entry : owned.entrySet()) {
+                    inFlight.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        Map<String, List<String>> reviews = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<List<String>>> entry : fetches.entrySet()) {
+            reviews.put(entry.getKey(), await(entry.getValue()));
+        }
+        return reviews;
+    }
+
+    /**
+     * Retrieves the number of fetches that were answered by a fetch already in flight,
+     * i.e. the calls to the backend that were saved.
+     *
+     * @return The number of coalesced fetches.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Retrieves the number of books currently being fetched.
+     *
+     * @return The number of fetches in flight.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Closes the underlying review service.
+     */
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    // Waits for a fetch, rethrowing the exception it failed with.
+    private static List<String> await(CompletableFuture<List<String>> fetch) {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ReviewException("Interrupted while waiting for reviews.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    private static List<String> readOnly(List<String> reviews) {
+        return reviews == null ? null : Collections.unmodifiableList(new ArrayList<>(reviews));
+    }
+}
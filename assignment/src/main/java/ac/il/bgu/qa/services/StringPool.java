@@ -0,0 +1,120 @@
+package ac.il.bgu.qa.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A pool storing every distinct string once, as UTF-8 bytes in a single growing array.
+ * Strings are referred to by an int id, so records can hold their strings as primitives, and no
+ * String object is kept alive by the pool. Not thread-safe; callers guard it with their own lock.
+ */
+final class StringPool {
+
+    // The UTF-8 bytes of all the strings, one after the other.
+    private byte[] data = new byte[1024];
+    // The number of bytes used in data.
+    private int size;
+    // The start of every string in data, indexed by id, followed by the end of the last string.
+    private int[] offsets = new int[65];
+    // The number of strings in the pool.
+    private int count;
+    // An open-addressing hash table of string ids plus one, 0 marking a free slot.
+    private int[] table = new int[128];
+
+    /**
+     * Retrieves the id of a string, adding the string to the pool if needed.
+     *
+     * @param value The string.
+     * @return The id of the string.
+     */
+    int intern(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes, 0, bytes.length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                id = append(bytes);
+                table[slot] = id + 1;
+                if (count * 2 > table.length) {
+                    rehash();
+                }
+                return id;
+            } else if (matches(id, bytes)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Retrieves a string of the pool.
+     *
+     * @param id The id of the string.
+     * @return The string.
+     */
+    String get(int id) {
+        return new String(data, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves the number of bytes used by the pool, for sizing estimates.
+     *
+     * @return The number of bytes held by the pool's arrays.
+     */
+    long memoryUsage() {
+        return data.length + 4L * offsets.length + 4L * table.length;
+    }
+
+    // Appends the bytes of a new string and returns its id.
+    private int append(byte[] bytes) {
+        if (size + bytes.length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + bytes.length));
+        }
+        System.arraycopy(bytes, 0, data, size, bytes.length);
+        size += bytes.length;
+        if (count + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count] = size - bytes.length;
+        offsets[count + 1] = size;
+        return count++;
+    }
+
+    // Checks whether a string of the pool has the given bytes.
+    private boolean matches(int id, byte[] bytes) {
+        int start = offsets[id];
+        if (offsets[id + 1] - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (data[start + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Doubles the hash table, placing every id again.
+    private void rehash() {
+        int[] larger = new int[table.length * 2];
+        int mask = larger.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = hash(data, offsets[id], offsets[id + 1] - offsets[id]) & mask;
+            while (larger[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            larger[slot] = id + 1;
+        }
+        table = larger;
+    }
+
+    // Hashes a range of bytes, spreading the bits so linear probing stays short.
+    private static int hash(byte[] bytes, int start, int length) {
+        int h = 1;
+        for (int i = start; i < start + length; i++) {
+            h = 31 * h + bytes[i];
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
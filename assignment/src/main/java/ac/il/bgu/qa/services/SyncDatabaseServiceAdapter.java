@@ -0,0 +1,58 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the calls of a blocking {@link DatabaseService} on an executor.
+ */
+class SyncDatabaseServiceAdapter implements AsyncDatabaseService {
+
+    // The blocking database service.
+    private final DatabaseService databaseService;
+    // The executor running the blocking calls.
+    private final Executor executor;
+
+    SyncDatabaseServiceAdapter(DatabaseService databaseService, Executor executor) {
+        if (databaseService == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        } else if (executor == null) {
+            throw new IllegalArgumentException("Invalid executor.");
+        }
+        this.databaseService = databaseService;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Void> addBook(String ISBN, Book book) {
+        return CompletableFuture.runAsync(() -> databaseService.addBook(ISBN, book), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> registerUser(String id, User user) {
+        return CompletableFuture.runAsync(() -> databaseService.registerUser(id, user), executor);
+    }
+
+    @Override
+    public CompletableFuture<Book> getBookByISBN(String ISBN) {
+        return CompletableFuture.supplyAsync(() -> databaseService.getBookByISBN(ISBN), executor);
+    }
+
+    @Override
+    public CompletableFuture<User> getUserById(String userId) {
+        return CompletableFuture.supplyAsync(() -> databaseService.getUserById(userId), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> borrowBook(String ISBN, String userId) {
+        return CompletableFuture.runAsync(() -> databaseService.borrowBook(ISBN, userId), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> returnBook(String ISBN) {
+        return CompletableFuture.runAsync(() -> databaseService.returnBook(ISBN), executor);
+    }
+}
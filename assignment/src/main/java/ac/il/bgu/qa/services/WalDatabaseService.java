@@ -0,0 +1,646 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.UserId;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A durable {@link DatabaseService} keeping its data in memory and every change in a write-ahead log on disk.
+ * <p>
+ * A write returns only once its log record is on disk, and its change becomes visible to reads only then, so a
+ * write that fails to reach the disk is never seen. Records are written by a single writer thread with
+ * group commit: the records of all the writes waiting at the same time are written together and made durable
+ * with a single {@link FileChannel#force(boolean)}, so many concurrent writes share the cost of one disk sync.
+ * <p>
+ * Periodically, the log is rotated and a snapshot of the data is written next to it, after which older logs
+ * are deleted. On startup, the latest snapshot is loaded and only the logs written after it are replayed.
+ * Snapshots are taken while writes continue: every record sets the value of a single book, user or borrowing,
+ * so replaying the logs after the rotation over the snapshot always ends in the latest state.
+ * <p>
+ * Users are stored without their notification service, which is provided again when they are loaded.
+ * A book or user whose record would exceed 1 MiB is rejected with an {@link IllegalArgumentException}
+ * before anything is changed, as recovery could not read it back.
+ * If writing the log fails, the database stops accepting writes, as their durability can no longer be known.
+ */
+public class WalDatabaseService implements DatabaseService, AutoCloseable {
+
+    // The names of the log and snapshot files, followed by their generation.
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+
+    // The maximum number of records made durable by a single disk sync.
+    private static final int MAX_BATCH = 4096;
+
+    // The directory holding the logs and snapshots.
+    private final Path directory;
+    // Provides the notification service of every user loaded from disk, by user Id.
+    private final Function<String, NotificationService> notificationServices;
+    // The current data, which the writer thread changes once their records are durable, in the order they are logged.
+    private final InMemoryDatabaseService state = new InMemoryDatabaseService();
+
+    // Orders the log records like the changes they describe. Guards generation, closed and failure changes.
+    private final Object appendLock = new Object();
+    // The records and log rotations waiting for the writer thread.
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    // Ensures a single snapshot is taken at a time.
+    private final Object snapshotLock = new Object();
+    // The thread writing the log.
+    private final Thread writer;
+    // Takes the periodic snapshots, or null if they are disabled.
+    private final ScheduledExecutorService snapshotScheduler;
+    // Opens the log files.
+    private final LogOpener logOpener;
+
+    // The generation of the log new records are appended to.
+    private long generation;
+    // The log new records are appended to, only used by the writer thread once it is started.
+    private FileChannel log;
+    // Whether the database was closed.
+    private volatile boolean closed;
+    // The error that stopped the writer thread, or null.
+    private volatile IOException failure;
+
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+
+    /**
+     * Opens a WalDatabaseService taking a snapshot every 5 minutes.
+     *
+     * @param directory            The directory holding the logs and snapshots, created if needed.
+     * @param notificationServices Provides the notification service of every user loaded from disk, by user Id.
+     * @throws UncheckedIOException If the data cannot be loaded from the directory.
+     */
+    public WalDatabaseService(Path directory, Function<String, NotificationService> notificationServices) {
+        this(directory, notificationServices, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    /**
+     * Opens a WalDatabaseService.
+     *
+     * @param directory              The directory holding the logs and snapshots, created if needed.
+     * @param notificationServices   Provides the notification service of every user loaded from disk, by user Id.
+     * @param snapshotIntervalMillis The time between two periodic snapshots, in milliseconds. 0 disables them.
+     * @throws UncheckedIOException If the data cannot be loaded from the directory.
+     */
+    public WalDatabaseService(Path directory, Function<String, NotificationService> notificationServices,
+                              long snapshotIntervalMillis) {
+        this(directory, notificationServices, snapshotIntervalMillis, WalDatabaseService::openChannel);
+    }
+
+    // Visible for tests, which make the log fail.
+    WalDatabaseService(Path directory, Function<String, NotificationService> notificationServices,
+                       long snapshotIntervalMillis, LogOpener logOpener) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Invalid directory.");
+        } else if (notificationServices == null) {
+            throw new IllegalArgumentException("Invalid notification services.");
+        } else if (snapshotIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid snapshot interval.");
+        }
+        this.directory = directory;
+        this.notificationServices = notificationServices;
+        this.logOpener = logOpener;
+
+        try {
+            Files.createDirectories(directory);
+            generation = recover() + 1;
+            log = openLog(generation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        writer = new Thread(this::writeLoop, "library-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        if (snapshotIntervalMillis > 0) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "library-wal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(this::periodicSnapshot,
+                    snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            snapshotScheduler = null;
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        append(Collections.singletonList(WalRecord.addBook(ISBN, book.getTitle(), book.getAuthor())),
+                () -> state.addBook(ISBN, book));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException If the Id is not a 12-digit number.
+     */
+    @Override
+    public void registerUser(String id, User user) {
+        UserId.parse(id);
+        append(Collections.singletonList(WalRecord.registerUser(id, user.getName())),
+                () -> state.registerUser(id, user));
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        return state.getBookByISBN(ISBN);
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return state.getUserById(userId);
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        append(Collections.singletonList(WalRecord.borrow(ISBN, userId)), () -> state.borrowBook(ISBN, userId));
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        append(Collections.singletonList(WalRecord.giveBack(ISBN)), () -> state.returnBook(ISBN));
+    }
+
+    /**
+     * {@inheritDoc}
+     * All the books are made durable together.
+     */
+    @Override
+    public void addBooks(Map<String, Book> books) {
+        List<byte[]> logged = new ArrayList<>(books.size());
+        for (Map.Entry<String, Book> entry : books.entrySet()) {
+            logged.add(WalRecord.addBook(entry.getKey(), entry.getValue().getTitle(), entry.getValue().getAuthor()));
+        }
+        append(logged, () -> state.addBooks(books));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Either all users are registered or, if any Id is invalid, none of them. All the users are made durable together.
+     *
+     * @throws IllegalArgumentException If any Id is not a 12-digit number.
+     */
+    @Override
+    public void registerUsers(Map<String, User> users) {
+        List<byte[]> logged = new ArrayList<>(users.size());
+        for (Map.Entry<String, User> entry : users.entrySet()) {
+            UserId.parse(entry.getKey());
+            logged.add(WalRecord.registerUser(entry.getKey(), entry.getValue().getName()));
+        }
+        append(logged, () -> state.registerUsers(users));
+    }
+
+    /**
+     * Fetches the Id of the user currently borrowing a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Id of the borrower, or null if the book is not borrowed.
+     */
+    public String getBorrowerId(String ISBN) {
+        return state.getBorrowerId(ISBN);
+    }
+
+    /**
+     * Rotates the log and writes a snapshot of the data, then deletes the logs and snapshots it replaces.
+     * Writes continue while the snapshot is written.
+     *
+     * @throws UncheckedIOException If the snapshot cannot be written.
+     */
+    public void snapshot() {
+        synchronized (snapshotLock) {
+            // Start a new log. Every change made before is in the older logs, which are durable once it is open.
+            PendingWrite rotation;
+            long snapshotGeneration;
+            synchronized (appendLock) {
+                checkWritable();
+                snapshotGeneration = ++generation;
+                rotation = new PendingWrite(null, snapshotGeneration, null);
+                queue.add(rotation);
+            }
+            await(rotation);
+
+            try {
+                writeSnapshot(snapshotGeneration);
+                deleteOlderThan(snapshotGeneration);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            snapshots.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots, waits for the pending writes to be durable and closes the log.
+     * The data stays readable, but further writes are rejected.
+     */
+    @Override
+    public void close() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+        }
+        PendingWrite stop = null;
+        synchronized (appendLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (failure == null) {
+                stop = new PendingWrite(null, -1, null);
+                queue.add(stop);
+            }
+        }
+        if (stop != null) {
+            stop.done.join();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Retrieves the number of log records made durable since the database was opened.
+     *
+     * @return The number of records.
+     */
+    public long getRecordCount() {
+        return records.get();
+    }
+
+    /**
+     * Retrieves the number of disk syncs of the log since the database was opened.
+     * With group commit, this is usually much lower than the number of records under concurrent writes.
+     *
+     * @return The number of commits.
+     */
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    /**
+     * Retrieves the number of snapshots taken since the database was opened.
+     *
+     * @return The number of snapshots.
+     */
+    public long getSnapshotCount() {
+        return snapshots.get();
+    }
+
+    // Queues the records of a change, then waits until they are durable and the change was applied.
+    // The change must not fail, so its arguments are validated before; a change that was never logged is never applied.
+    private void append(List<byte[]> logged, Runnable change) {
+        if (logged.isEmpty()) {
+            return;
+        }
+        PendingWrite last = null;
+        synchronized (appendLock) {
+            checkWritable();
+            for (int i = 0; i < logged.size(); i++) {
+                // The change is applied with the last of its records, so it is seen all at once.
+                last = new PendingWrite(logged.get(i), 0, i == logged.size() - 1 ? change : null);
+                queue.add(last);
+            }
+        }
+        await(last);
+    }
+
+    // Fails if the database no longer accepts writes.
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed.", failure);
+        } else if (closed) {
+            throw new IllegalStateException("Database closed.");
+        }
+    }
+
+    // Waits until a pending write is done, rethrowing its failure.
+    private static void await(PendingWrite write) {
+        try {
+            write.done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Writes the queued records in batches, each made durable by a single disk sync.
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>();
+        List<PendingWrite> written = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                for (PendingWrite write : batch) {
+                    if (write.record != null) {
+                        written.add(write);
+                        continue;
+                    }
+                    // A rotation or the end of the log: first make the records before it durable.
+                    commit(written);
+                    if (write.generation < 0) {
+                        log.close();
+                        write.done.complete(null);
+                        return;
+                    }
+                    log.close();
+                    log = openLog(write.generation);
+                    write.done.complete(null);
+                }
+                commit(written);
+                batch.clear();
+            }
+        } catch (IOException e) {
+            fail(e, batch);
+        } catch (InterruptedException e) {
+            fail(new IOException("Write-ahead log writer interrupted."), batch);
+        }
+    }
+
+    // Writes records with a single gathering write and makes them durable with a single sync, then applies their changes.
+    private void commit(List<PendingWrite> written) throws IOException {
+        if (written.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[written.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(written.get(i).record);
+            remaining += buffers[i].remaining();
+        }
+        while (remaining > 0) {
+            remaining -= log.write(buffers);
+        }
+        // Syncing the data also syncs the file length, which is all an appended log needs.
+        log.force(false);
+
+        commits.incrementAndGet();
+        records.addAndGet(written.size());
+        for (PendingWrite write : written) {
+            try {
+                if (write.change != null) {
+                    write.change.run();
+                }
+                write.done.complete(null);
+            } catch (RuntimeException e) {
+                write.done.completeExceptionally(e);
+            }
+        }
+        written.clear();
+    }
+
+    // Stops accepting writes after the log failed, failing every write that is not durable.
+    private void fail(IOException error, List<PendingWrite> batch) {
+        List<PendingWrite> failed = new ArrayList<>(batch);
+        synchronized (appendLock) {
+            failure = error;
+            queue.drainTo(failed);
+        }
+        UncheckedIOException exception = new UncheckedIOException("Write-ahead log failed.", error);
+        for (PendingWrite write : failed) {
+            write.done.completeExceptionally(exception);
+        }
+        try {
+            log.close();
+        } catch (IOException ignored) {
+            // The log already failed.
+        }
+    }
+
+    // Takes a periodic snapshot, keeping the schedule going if a snapshot fails.
+    private void periodicSnapshot() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            // The next snapshot is attempted at the next period; writes stay durable in the log meanwhile.
+        }
+    }
+
+    // Loads the latest snapshot and replays the logs written after it. Returns the last generation found.
+    private long recover() throws IOException {
+        List<Long> snapshotGenerations = generations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        Collections.reverse(snapshotGenerations);
+        long start = 0;
+        for (long snapshotGeneration : snapshotGenerations) {
+            Path snapshot = snapshotPath(snapshotGeneration);
+            // A snapshot is used only if it is complete, otherwise an older one is tried.
+            if (replay(snapshot, true, false)) {
+                replay(snapshot, true, true);
+                start = snapshotGeneration;
+                break;
+            }
+        }
+
+        long last = start;
+        for (long logGeneration : generations(LOG_PREFIX, LOG_SUFFIX)) {
+            if (logGeneration >= start) {
+                replay(logPath(logGeneration), false, true);
+            }
+            last = Math.max(last, logGeneration);
+        }
+        return last;
+    }
+
+    /**
+     * Reads the records of a log or snapshot, stopping at the first torn or corrupted record.
+     *
+     * @param file     The file to be read.
+     * @param snapshot Whether the file is a snapshot, which must end with an end record to be complete.
+     * @param apply    Whether to apply the records, or only check the file.
+     * @return true if the file is a complete snapshot, or a log.
+     */
+    private boolean replay(Path file, boolean snapshot, boolean apply) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            WalRecord record;
+            while ((record = WalRecord.read(in)) != null) {
+                if (record.type == WalRecord.SNAPSHOT_END) {
+                    return true;
+                } else if (apply) {
+                    apply(record);
+                }
+            }
+        }
+        return !snapshot;
+    }
+
+    // Applies a record read from disk to the data.
+    private void apply(WalRecord record) {
+        String[] fields = record.fields;
+        switch (record.type) {
+            case WalRecord.ADD_BOOK:
+                state.addBook(fields[0], new Book(fields[0], fields[1], fields[2]));
+                break;
+            case WalRecord.REGISTER_USER:
+                state.registerUser(fields[0], new User(fields[1], fields[0], notificationServices.apply(fields[0])));
+                break;
+            case WalRecord.BORROW:
+                state.borrowBook(fields[0], fields[1]);
+                break;
+            case WalRecord.RETURN:
+                state.returnBook(fields[0]);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Writes a snapshot of the data to a temporary file, then moves it in place once it is durable.
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + SNAPSHOT_SUFFIX + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            try {
+                // Books first, so the borrowings replayed last find them.
+                state.forEachBook((ISBN, book) -> write(out, WalRecord.addBook(ISBN, book.getTitle(), book.getAuthor())));
+                state.forEachUser((id, user) -> write(out, WalRecord.registerUser(id, user.getName())));
+                state.forEachBorrowing((ISBN, userId) -> write(out, WalRecord.borrow(ISBN, userId)));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.write(WalRecord.snapshotEnd());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath(snapshotGeneration), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    // Writes a record from a callback that cannot throw checked exceptions.
+    private static void write(OutputStream out, byte[] record) {
+        try {
+            out.write(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Deletes the logs and snapshots replaced by the snapshot of the given generation.
+    private void deleteOlderThan(long snapshotGeneration) throws IOException {
+        for (long logGeneration : generations(LOG_PREFIX, LOG_SUFFIX)) {
+            if (logGeneration < snapshotGeneration) {
+                Files.deleteIfExists(logPath(logGeneration));
+            }
+        }
+        for (long olderGeneration : generations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (olderGeneration < snapshotGeneration) {
+                Files.deleteIfExists(snapshotPath(olderGeneration));
+            }
+        }
+        // Also delete the temporary files of snapshots interrupted by a crash.
+        for (long olderGeneration : generations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX + ".tmp")) {
+            if (olderGeneration < snapshotGeneration) {
+                Files.deleteIfExists(directory.resolve(SNAPSHOT_PREFIX + olderGeneration + SNAPSHOT_SUFFIX + ".tmp"));
+            }
+        }
+    }
+
+    // Opens the log of a generation for appending.
+    private FileChannel openLog(long logGeneration) throws IOException {
+        FileChannel channel = logOpener.open(logPath(logGeneration));
+        forceDirectory();
+        return channel;
+    }
+
+    private static FileChannel openChannel(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Makes the creation and renaming of files in the directory durable, where the platform supports it.
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms cannot open or sync directories; file contents are synced regardless.
+        }
+    }
+
+    // Lists the generations of the files with the given name, in ascending order.
+    private List<Long> generations(String prefix, String suffix) throws IOException {
+        List<Long> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    found.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not a file of this database.
+                }
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    private Path logPath(long logGeneration) {
+        return directory.resolve(LOG_PREFIX + logGeneration + LOG_SUFFIX);
+    }
+
+    private Path snapshotPath(long snapshotGeneration) {
+        return directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Opens a log file for appending.
+     */
+    interface LogOpener {
+        FileChannel open(Path file) throws IOException;
+    }
+
+    /**
+     * A log record waiting to be written, or a request to rotate or close the log when it has no record.
+     */
+    private static class PendingWrite {
+        // The framed record, or null for a rotation or the end of the log.
+        final byte[] record;
+        // The generation of the next log for a rotation, or -1 for the end of the log.
+        final long generation;
+        // The change applied to the data once the record is durable, or null.
+        final Runnable change;
+        // Completed once the record is durable and its change applied, or the rotation is done.
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PendingWrite(byte[] record, long generation, Runnable change) {
+            this.record = record;
+            this.generation = generation;
+            this.change = change;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ac.il.bgu.qa.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * A record of the write-ahead log and of the snapshots of {@link WalDatabaseService}.
+ * On disk, every record is framed as its payload length, the CRC-32 of its payload and the payload itself,
+ * so a record torn by a crash is detected and ignored during recovery.
+ */
+final class WalRecord {
+
+    // The record types.
+    static final byte ADD_BOOK = 1;
+    static final byte REGISTER_USER = 2;
+    static final byte BORROW = 3;
+    static final byte RETURN = 4;
+    static final byte SNAPSHOT_END = 5;
+
+    // The largest payload. Checked when writing, so every logged record can be read back,
+    // and when reading, so a corrupted length cannot cause a huge allocation.
+    private static final int MAX_PAYLOAD = 1 << 20;
+
+    // The type of the record.
+    final byte type;
+    // The fields of the record, depending on its type.
+    final String[] fields;
+
+    private WalRecord(byte type, String... fields) {
+        this.type = type;
+        this.fields = fields;
+    }
+
+    static byte[] addBook(String ISBN, String title, String author) {
+        return encode(ADD_BOOK, ISBN, title, author);
+    }
+
+    static byte[] registerUser(String id, String name) {
+        return encode(REGISTER_USER, id, name);
+    }
+
+    static byte[] borrow(String ISBN, String userId) {
+        return encode(BORROW, ISBN, userId);
+    }
+
+    static byte[] giveBack(String ISBN) {
+        return encode(RETURN, ISBN);
+    }
+
+    static byte[] snapshotEnd() {
+        return encode(SNAPSHOT_END);
+    }
+
+    /**
+     * Encodes a record with its framing.
+     *
+     * @param type   The type of the record.
+     * @param fields The fields of the record. A null field is encoded as such.
+     * @return The framed record.
+     * @throws IllegalArgumentException If the payload is larger than recovery accepts.
+     */
+    private static byte[] encode(byte type, String... fields) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(type);
+            for (String field : fields) {
+                if (field == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            byte[] body = payload.toByteArray();
+            if (body.length > MAX_PAYLOAD) {
+                throw new IllegalArgumentException("Record too large.");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+
+            ByteArrayOutputStream framed = new ByteArrayOutputStream(body.length + 8);
+            DataOutputStream frame = new DataOutputStream(framed);
+            frame.writeInt(body.length);
+            frame.writeInt((int) crc.getValue());
+            frame.write(body);
+            return framed.toByteArray();
+        } catch (IOException e) {
+            // Writing to a byte array never fails.
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the next record of a log or snapshot.
+     *
+     * @param in The stream of framed records.
+     * @return The record, or null if the stream ends, or its next record is torn or corrupted.
+     * @throws IOException If reading fails.
+     */
+    static WalRecord read(DataInputStream in) throws IOException {
+        byte[] body;
+        int expectedCrc;
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_PAYLOAD) {
+                return null;
+            }
+            expectedCrc = in.readInt();
+            body = new byte[length];
+            in.readFully(body);
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+        return decode(body);
+    }
+
+    // Decodes a payload whose checksum was verified.
+    private static WalRecord decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        int count;
+        switch (type) {
+            case ADD_BOOK:
+                count = 3;
+                break;
+            case REGISTER_USER:
+            case BORROW:
+                count = 2;
+                break;
+            case RETURN:
+                count = 1;
+                break;
+            case SNAPSHOT_END:
+                count = 0;
+                break;
+            default:
+                throw new IOException("Unknown record type " + type + ".");
+        }
+        String[] fields = new String[count];
+        for (int i = 0; i < count; i++) {
+            fields[i] = readField(in);
+        }
+        return new WalRecord(type, fields);
+    }
+
+    private static String readField(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
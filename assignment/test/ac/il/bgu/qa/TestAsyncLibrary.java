@@ -0,0 +1,143 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.services.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestAsyncLibrary {
+
+    // Runs every task on the calling thread, so the futures are complete when the calls return.
+    static final Executor DIRECT = Runnable::run;
+
+    AsyncLibrary testLibrary;
+    InMemoryDatabaseService database;
+
+    @Mock
+    ReviewService mockReviewApiServer;
+
+    @Mock
+    NotificationService mockNotificationApiClient;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        database = new InMemoryDatabaseService();
+        database.addBook("978-3-16-148410-0", new Book("978-3-16-148410-0", "Lord of the Rings", "J. R. R. Tolkien"));
+        database.registerUser("123456789012", new User("Noa", "123456789012", mockNotificationApiClient));
+        testLibrary = new AsyncLibrary(AsyncDatabaseService.fromSync(database, DIRECT),
+                AsyncReviewService.fromSync(mockReviewApiServer, DIRECT), DIRECT);
+    }
+
+    @Test
+    void GivenInvalidISBN_WhenborrowBook_ThenFailedFuture_InvalidISBN() {
+        CompletableFuture<Void> result = testLibrary.borrowBook("978-3-16-148410-2", "123456789012");
+
+        CompletionException thrown = assertThrows(CompletionException.class, result::join);
+        assertEquals(IllegalArgumentException.class, thrown.getCause().getClass());
+        assertEquals("Invalid ISBN.", thrown.getCause().getMessage());
+    }
+
+    @Test
+    void GivenUnknownBookAndInvalidUserId_WhenborrowBook_ThenFailedFuture_Booknotfound() {
+        CompletableFuture<Void> result = testLibrary.borrowBook("978-0-306-40615-7", "12345");
+
+        CompletionException thrown = assertThrows(CompletionException.class, result::join);
+        assertEquals(BookNotFoundException.class, thrown.getCause().getClass());
+    }
+
+    @Test
+    void GivenInvalidUserId_WhenborrowBook_ThenFailedFuture_InvaliduserId() {
+        CompletableFuture<Void> result = testLibrary.borrowBook("978-3-16-148410-0", "12345");
+
+        CompletionException thrown = assertThrows(CompletionException.class, result::join);
+        assertEquals(IllegalArgumentException.class, thrown.getCause().getClass());
+        assertEquals("Invalid user Id.", thrown.getCause().getMessage());
+        assertNull(database.getBorrowerId("978-3-16-148410-0"));
+    }
+
+    @Test
+    void GivenBorrowedBook_WhenborrowBook_ThenFailedFuture_Bookisalreadyborrowed() {
+        testLibrary.borrowBook("978-3-16-148410-0", "123456789012").join();
+
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> testLibrary.borrowBook("978-3-16-148410-0", "123456789012").join());
+        assertEquals(BookAlreadyBorrowedException.class, thrown.getCause().getClass());
+        assertEquals("123456789012", database.getBorrowerId("978-3-16-148410-0"));
+    }
+
+    @Test
+    void GivenBookReborrowedBeforeDBFails_WhenborrowBook_ThenNewBorrowerKept() {
+        // Mock the behavior
+        Book book = database.getBookByISBN("978-3-16-148410-0");
+        DatabaseService failing = new InMemoryDatabaseService() {
+            @Override
+            public void borrowBook(String ISBN, String userId) {
+                // While the borrowing is being recorded, the book is returned and borrowed by another user.
+                book.tryReturn();
+                book.tryBorrow("111111111111");
+                throw new IllegalStateException("DB down");
+            }
+        };
+        failing.addBook("978-3-16-148410-0", book);
+        failing.registerUser("123456789012", database.getUserById("123456789012"));
+        testLibrary = new AsyncLibrary(AsyncDatabaseService.fromSync(failing, DIRECT),
+                AsyncReviewService.fromSync(mockReviewApiServer, DIRECT), DIRECT);
+        // Act
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> testLibrary.borrowBook("978-3-16-148410-0", "123456789012").join());
+        // Assertions
+        assertEquals(IllegalStateException.class, thrown.getCause().getClass());
+        assertEquals("111111111111", book.getBorrowerId());
+    }
+
+    @Test
+    void GivenReviews_WhennotifyUserWithBookReviews_ThenNotifyUserAfterRetry() {
+        // Mock the behavior
+        when(mockReviewApiServer.getReviewsForBook("978-3-16-148410-0")).thenReturn(Arrays.asList("review 1", "review 2"));
+        String notification = "Reviews for 'Lord of the Rings':\nreview 1\nreview 2";
+        doThrow(new NotificationException("Notification failed!")).doNothing()
+                .when(mockNotificationApiClient).notifyUser("123456789012", notification);
+        // Act
+        testLibrary.notifyUserWithBookReviews("978-3-16-148410-0", "123456789012").join();
+        // Verify
+        verify(mockNotificationApiClient, times(2)).notifyUser("123456789012", notification);
+        verify(mockReviewApiServer, times(1)).close();
+    }
+
+    @Test
+    void GivenFailingReviewService_WhennotifyUserWithBookReviews_ThenFailedFuture_Reviewserviceunavailable() {
+        // Mock the behavior
+        when(mockReviewApiServer.getReviewsForBook("978-3-16-148410-0")).thenThrow(new ReviewException("Review service unavailable!"));
+        // Act
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> testLibrary.notifyUserWithBookReviews("978-3-16-148410-0", "123456789012").join());
+        // Assertions
+        assertEquals(ReviewServiceUnavailableException.class, thrown.getCause().getClass());
+        verify(mockNotificationApiClient, never()).notifyUser(anyString(), anyString());
+    }
+
+    @Test
+    void GivenUnregisteredUserAndFailingReviewService_WhennotifyUserWithBookReviews_ThenFailedFuture_Usernotfound() {
+        // Mock the behavior
+        when(mockReviewApiServer.getReviewsForBook("978-3-16-148410-0")).thenThrow(new ReviewException("Review service unavailable!"));
+        // Act
+        CompletionException thrown = assertThrows(CompletionException.class,
+                () -> testLibrary.notifyUserWithBookReviews("978-3-16-148410-0", "210987654321").join());
+        // Assertions
+        assertEquals(UserNotRegisteredException.class, thrown.getCause().getClass());
+        // The reviews are fetched concurrently with the user, and their failure is ignored.
+        verify(mockReviewApiServer, times(1)).getReviewsForBook("978-3-16-148410-0");
+        verify(mockNotificationApiClient, never()).notifyUser(anyString(), anyString());
+    }
+}
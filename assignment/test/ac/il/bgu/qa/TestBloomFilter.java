@@ -0,0 +1,59 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBloomFilter {
+
+    @Test
+    void GivenAddedKeys_WhenmightContain_ThenNoFalseNegatives() {
+        // Mock the behavior
+        BloomFilter testFilter = new BloomFilter(10_000, 0.01);
+        // Act
+        for (long key = 0; key < 10_000; key++) {
+            testFilter.put(9780000000000L + key * 7);
+        }
+        // Assertions
+        for (long key = 0; key < 10_000; key++) {
+            assertTrue(testFilter.mightContain(9780000000000L + key * 7));
+        }
+    }
+
+    @Test
+    void GivenExpectedInsertions_WhenmightContainUnknownKeys_ThenFalsePositiveRateNearConfigured() {
+        // Mock the behavior
+        BloomFilter testFilter = new BloomFilter(10_000, 0.01);
+        for (long key = 0; key < 10_000; key++) {
+            testFilter.put(key * 2);
+        }
+        // Act
+        int falsePositives = 0;
+        for (long key = 0; key < 100_000; key++) {
+            if (testFilter.mightContain(key * 2 + 1)) {
+                falsePositives++;
+            }
+        }
+        // Assertions
+        assertTrue(falsePositives < 2_000, "false positives " + falsePositives);
+        assertEquals(7, testFilter.getHashCount());
+        assertEquals(0.01, testFilter.getExpectedFalsePositiveProbability(10_000), 0.001);
+    }
+
+    @Test
+    void GivenBitCount_WhenwithBitCount_ThenRoundedToWords() {
+        // Act
+        BloomFilter testFilter = BloomFilter.withBitCount(1000, 100);
+        // Assertions
+        assertEquals(1024, testFilter.getBitCount());
+        assertFalse(testFilter.mightContain(42));
+    }
+
+    @Test
+    void GivenInvalidProbability_WhenConstructed_ThenIllegalArgumentException() {
+        // Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1.0));
+        assertEquals("Invalid false-positive probability.", thrown.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+    }
+}
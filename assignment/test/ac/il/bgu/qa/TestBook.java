@@ -0,0 +1,46 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBook {
+
+    @Test
+    void GivenBookBorrowedWithEqualId_WhentryReturnExpectedBorrower_ThenReturned() {
+        // Mock the behavior
+        Book book = new Book("978-3-16-148410-0", "The Hobbit", "J.R.R. Tolkien");
+        book.tryBorrow(new String("111111111111"));
+        // Act
+        boolean returned = book.tryReturn("111111111111");
+        // Assertions
+        assertTrue(returned);
+        assertFalse(book.isBorrowed());
+    }
+
+    @Test
+    void GivenBookBorrowedByOtherUser_WhentryReturnExpectedBorrower_ThenStillBorrowed() {
+        // Mock the behavior
+        Book book = new Book("978-3-16-148410-0", "The Hobbit", "J.R.R. Tolkien");
+        book.tryBorrow("222222222222");
+        // Act
+        boolean returned = book.tryReturn("111111111111");
+        // Assertions
+        assertFalse(returned);
+        assertEquals("222222222222", book.getBorrowerId());
+    }
+
+    @Test
+    void GivenBookBorrowedByUnknownUser_WhentryReturnExpectedBorrower_ThenStillBorrowed() {
+        // Mock the behavior
+        Book book = new Book("978-3-16-148410-0", "The Hobbit", "J.R.R. Tolkien");
+        book.borrow();
+        // Act
+        boolean returned = book.tryReturn("");
+        // Assertions
+        assertFalse(returned);
+        assertTrue(book.isBorrowed());
+    }
+}
@@ -0,0 +1,41 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestIsbnValidator {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"978-3-16-148410-0","9783161484100","978-0-306-40615-7","978--3-16-148410-0-"})
+    void GivenValidISBN_WhenisValid_ThenTrue(String isbn) {
+        assertTrue(IsbnValidator.isValid(isbn));
+        assertTrue(IsbnValidator.isValid(new StringBuilder(isbn)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"","978-3-16-148410-2","978-3-16-148410!","978-3-16-148410","aab-fjfks-gnd","97831614841000","-------------"})
+    void GivenInvalidISBN_WhenisValid_ThenFalse(String isbn) {
+        assertFalse(IsbnValidator.isValid(isbn));
+        assertFalse(IsbnValidator.isValid(new StringBuilder(isbn)));
+    }
+
+    @Test
+    void GivenNullISBN_WhenisValid_ThenFalse() {
+        assertFalse(IsbnValidator.isValid((String) null));
+        assertFalse(IsbnValidator.isValid((CharSequence) null));
+    }
+
+    @Test
+    void GivenHyphenatedISBN_WhentoLong_ThenPackedLikePlainISBN() {
+        assertEquals(9783161484100L, IsbnValidator.toLong("978-3-16-148410-0"));
+        assertEquals(9783161484100L, IsbnValidator.toLong("9783161484100"));
+        assertEquals(-1, IsbnValidator.toLong("978-3-16-148410-2"));
+        assertEquals("9783161484100", IsbnValidator.toString(9783161484100L));
+        assertEquals("0000000000017", IsbnValidator.toString(17));
+    }
+}
@@ -1,18 +1,41 @@
 package ac.il.bgu.qa;
 
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.events.LibraryEvent;
+import ac.il.bgu.qa.metrics.InMemoryLibraryMetrics;
+import ac.il.bgu.qa.metrics.LibraryMetrics.Operation;
+import ac.il.bgu.qa.resilience.ExponentialBackoffRetryPolicy;
+import ac.il.bgu.qa.resilience.RetryBudget;
+import ac.il.bgu.qa.services.CompactDatabaseService;
 import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.MessageBody;
 import ac.il.bgu.qa.services.NotificationService;
 import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.services.ReviewServicePool;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
@@ -225,9 +248,10 @@ public class TestLibrary {
         // Verify
         verify(mockDBApiServer, times(1)).getBookByISBN(mockBookApiClient.getISBN());
         verify(mockDBApiServer,times(1)).addBook(mockBookApiClient.getISBN(),mockBookApiClient);
-        verify(mockBookApiClient,times(6)).getISBN();
-        verify(mockBookApiClient,times(2)).getTitle();
-        verify(mockBookApiClient,times(1)).getAuthor();
+        // The book is read once more to be indexed for catalog searches
+        verify(mockBookApiClient,times(7)).getISBN();
+        verify(mockBookApiClient,times(3)).getTitle();
+        verify(mockBookApiClient,times(2)).getAuthor();
         verify(mockBookApiClient,times(1)).isBorrowed();
 
     }
@@ -272,7 +296,7 @@ public class TestLibrary {
         when(mockDBApiServer.getBookByISBN(mockBookApiClient.getISBN())).thenReturn(mockBookApiClient);
         when(mockUserApiClient.getId()).thenReturn("111111111111");
         when(mockDBApiServer.getUserById(mockUserApiClient.getId())).thenReturn(mockUserApiClient);
-        when(mockBookApiClient.isBorrowed()).thenReturn(true);
+        when(mockBookApiClient.tryBorrow("111111111111")).thenReturn(false);
         // Act
         BookAlreadyBorrowedException thrown = assertThrows(BookAlreadyBorrowedException.class,() ->testLibrary.borrowBook(mockBookApiClient.getISBN(), mockUserApiClient.getId()));
         // Assertions
@@ -345,22 +369,75 @@ public class TestLibrary {
         when(mockDBApiServer.getBookByISBN(mockBookApiClient.getISBN())).thenReturn(mockBookApiClient);
         when(mockUserApiClient.getId()).thenReturn("111111111111");
         when(mockDBApiServer.getUserById(mockUserApiClient.getId())).thenReturn(mockUserApiClient);
-        when(mockBookApiClient.isBorrowed()).thenReturn(false);
+        when(mockBookApiClient.tryBorrow("111111111111")).thenReturn(true);
         //Act
         testLibrary.borrowBook(mockBookApiClient.getISBN(), mockUserApiClient.getId());
         // verify
         verify(mockDBApiServer, times(1)).getBookByISBN(mockBookApiClient.getISBN());
-        verify(mockBookApiClient, times(1)).borrow();
+        verify(mockBookApiClient, times(1)).tryBorrow("111111111111");
         verify(mockDBApiServer, times(1)).borrowBook(mockBookApiClient.getISBN(),mockUserApiClient.getId());
 
     }
 
+    @Test
+    void GivenFailingDB_WhenborrowBook_ThenBookReleased() {
+        // Mock the behavior
+        when(mockBookApiClient.getISBN()).thenReturn("978-3-16-148410-0");
+        when(mockDBApiServer.getBookByISBN(mockBookApiClient.getISBN())).thenReturn(mockBookApiClient);
+        when(mockUserApiClient.getId()).thenReturn("111111111111");
+        when(mockDBApiServer.getUserById(mockUserApiClient.getId())).thenReturn(mockUserApiClient);
+        when(mockBookApiClient.tryBorrow("111111111111")).thenReturn(true);
+        doThrow(new IllegalStateException("DB down")).when(mockDBApiServer).borrowBook("978-3-16-148410-0", "111111111111");
+        //Act
+        assertThrows(IllegalStateException.class,() -> testLibrary.borrowBook(mockBookApiClient.getISBN(), mockUserApiClient.getId()));
+        // verify
+        verify(mockBookApiClient, times(1)).tryBorrow("111111111111");
+        verify(mockBookApiClient, times(1)).tryReturn("111111111111");
+    }
+
+    @Test
+    void GivenBookReborrowedBeforeDBFails_WhenborrowBook_ThenNewBorrowerKept() {
+        // Mock the behavior
+        Book book = new Book("978-3-16-148410-0", "The Hobbit", "J.R.R. Tolkien");
+        when(mockDBApiServer.getBookByISBN(book.getISBN())).thenReturn(book);
+        when(mockUserApiClient.getId()).thenReturn("111111111111");
+        when(mockDBApiServer.getUserById("111111111111")).thenReturn(mockUserApiClient);
+        // While the database is recording the borrowing, the book is returned and borrowed by another user.
+        doAnswer(invocation -> {
+            book.tryReturn();
+            book.tryBorrow("222222222222");
+            throw new IllegalStateException("DB down");
+        }).when(mockDBApiServer).borrowBook(book.getISBN(), "111111111111");
+        // Act
+        assertThrows(IllegalStateException.class, () -> testLibrary.borrowBook(book.getISBN(), "111111111111"));
+        // Assertions
+        assertEquals("222222222222", book.getBorrowerId());
+    }
+
+    @Test
+    void GivenFailingDB_WhenreturnBook_ThenBookStillBorrowed() {
+        // Mock the behavior
+        Book book = new Book("978-3-16-148410-0", "The Hobbit", "J.R.R. Tolkien");
+        when(mockDBApiServer.getBookByISBN(book.getISBN())).thenReturn(book);
+        when(mockDBApiServer.getUserById("111111111111")).thenReturn(mockUserApiClient);
+        when(mockDBApiServer.getBooksByISBN(Collections.singleton(book.getISBN())))
+                .thenReturn(Collections.singletonMap(book.getISBN(), book));
+        testLibrary.borrowBook(book.getISBN(), "111111111111");
+        doThrow(new IllegalStateException("DB down")).when(mockDBApiServer).returnBook(book.getISBN());
+        //Act
+        assertThrows(IllegalStateException.class,() -> testLibrary.returnBook(book.getISBN()));
+        // Assertions
+        assertEquals("111111111111", book.getBorrowerId());
+        assertEquals(1, testLibrary.countBorrowed("111111111111"));
+        assertEquals(Collections.singletonList(book), testLibrary.getBorrowedBooks("111111111111"));
+    }
+
     @Test
     void GivenNoBorrowedBookISBN_WhenreturnBook_ThenBookNotBorrowedException_Bookwasntborrowed() {
         // Mock the behavior 
         when(mockBookApiClient.getISBN()).thenReturn("978-3-16-148410-0");
         when(mockDBApiServer.getBookByISBN(mockBookApiClient.getISBN())).thenReturn(mockBookApiClient);
-        when(mockBookApiClient.isBorrowed()).thenReturn(false);
+        when(mockBookApiClient.tryReturn()).thenReturn(false);
         //Act
         BookNotBorrowedException thrown = assertThrows(BookNotBorrowedException.class,() ->testLibrary.returnBook(mockBookApiClient.getISBN()));
         //Assertions
@@ -402,11 +479,11 @@ public class TestLibrary {
         // Mock the behavior 
         when(mockBookApiClient.getISBN()).thenReturn("978-3-16-148410-0");
         when(mockDBApiServer.getBookByISBN(mockBookApiClient.getISBN())).thenReturn(mockBookApiClient);
-        when(mockBookApiClient.isBorrowed()).thenReturn(true);
+        when(mockBookApiClient.tryReturn()).thenReturn(true);
         //Act
         testLibrary.returnBook(mockBookApiClient.getISBN());
         // verify
-        verify(mockBookApiClient,times(1)).returnBook();
+        verify(mockBookApiClient,times(1)).tryReturn();
         verify(mockDBApiServer,times(1)).returnBook(mockBookApiClient.getISBN());
     }
 
@@ -905,4 +982,525 @@ public class TestLibrary {
 
 
     }
+
+    //Batch add books
+    @Test
+    void GivenMixedBooks_WhenaddBooks_ThenValidBooksAddedInOneCall() {
+        // Mock the behavior
+        Book valid = new Book("978-3-16-148410-0", "New-Book", "James Bond");
+        Book invalid = new Book("978-3-16-148410-2", "New-Book", "James Bond");
+        Book duplicate = new Book("978-3-16-148410-0", "Other-Book", "James Bond");
+        Book existing = new Book("978-0-306-40615-7", "Old-Book", "James Bond");
+        when(mockDBApiServer.getBooksByISBN(anyCollection())).thenReturn(Collections.singletonMap(existing.getISBN(), existing));
+        // Act
+        BatchResult<Book> result = testLibrary.addBooks(Arrays.asList(valid, invalid, duplicate, existing));
+        // Assertions
+        assertEquals(Collections.singletonList(valid), result.getAccepted());
+        assertEquals(3, result.getFailures().size());
+        assertSame(invalid, result.getFailures().get(0).getItem());
+        assertEquals("Invalid ISBN.", result.getFailures().get(0).getCause().getMessage());
+        assertSame(duplicate, result.getFailures().get(1).getItem());
+        assertEquals("Book already exists.", result.getFailures().get(1).getCause().getMessage());
+        assertSame(existing, result.getFailures().get(2).getItem());
+        assertEquals("Book already exists.", result.getFailures().get(2).getCause().getMessage());
+        // Verify
+        verify(mockDBApiServer, times(1)).getBooksByISBN(anyCollection());
+        verify(mockDBApiServer, times(1)).addBooks(Collections.singletonMap(valid.getISBN(), valid));
+        verify(mockDBApiServer, never()).addBook(anyString(), any(Book.class));
+    }
+
+    @Test
+    void GivenNullCollection_WhenaddBooks_ThenIllegalArgumentException_Invalidbooks() {
+        // Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,() -> testLibrary.addBooks(null));
+        assertEquals("Invalid books.",thrown.getMessage());
+        // Verify
+        verifyNoMoreInteractions(mockDBApiServer);
+    }
+
+    //Batch register users
+    @Test
+    void GivenMixedUsers_WhenregisterUsers_ThenValidUsersRegisteredInOneCall() {
+        // Mock the behavior
+        User valid = new User("Noa", "123456789012", mockNotificationApiClient);
+        User invalid = new User("Noa", "123", mockNotificationApiClient);
+        User existing = new User("Dan", "111111111111", mockNotificationApiClient);
+        when(mockDBApiServer.getUsersById(anyCollection())).thenReturn(Collections.singletonMap(existing.getId(), existing));
+        // Act
+        BatchResult<User> result = testLibrary.registerUsers(Arrays.asList(valid, null, invalid, existing));
+        // Assertions
+        assertEquals(Collections.singletonList(valid), result.getAccepted());
+        assertEquals(3, result.getFailures().size());
+        assertEquals("Invalid user.", result.getFailures().get(0).getCause().getMessage());
+        assertEquals("Invalid user Id.", result.getFailures().get(1).getCause().getMessage());
+        assertEquals("User already exists.", result.getFailures().get(2).getCause().getMessage());
+        // Verify
+        verify(mockDBApiServer, times(1)).registerUsers(Collections.singletonMap(valid.getId(), valid));
+        verify(mockDBApiServer, never()).registerUser(anyString(), any(User.class));
+    }
+
+    //Asynchronous review notification
+    @Test
+    void GivenNotificationDispatcher_WhengetBookByISBN_ThenreturnBookWithoutNotifying() {
+        // Mock the behavior
+        ExecutorService mockExecutor = mock(ExecutorService.class);
+        NotificationDispatcher dispatcher = new NotificationDispatcher(mockExecutor, 1);
+        testLibrary.setNotificationDispatcher(dispatcher);
+        when(mockBookApiClient.getISBN()).thenReturn("978-3-16-148410-0");
+        when(mockUserApiClient.getId()).thenReturn("111111111111");
+        when(mockDBApiServer.getBookByISBN(mockBookApiClient.getISBN())).thenReturn(mockBookApiClient);
+        when(mockBookApiClient.isBorrowed()).thenReturn(false);
+        // Act
+        Book first = testLibrary.getBookByISBN(mockBookApiClient.getISBN(), mockUserApiClient.getId());
+        Book second = testLibrary.getBookByISBN(mockBookApiClient.getISBN(), mockUserApiClient.getId());
+        // Assertions
+        assertSame(mockBookApiClient, first);
+        assertSame(mockBookApiClient, second);
+        assertEquals(1, dispatcher.getSubmittedCount());
+        assertEquals(1, dispatcher.getRejectedCount());
+        // Verify
+        verify(mockExecutor, times(1)).execute(any(Runnable.class));
+        verify(mockDBApiServer, times(2)).getBookByISBN(mockBookApiClient.getISBN());
+        verify(mockDBApiServer, never()).getUserById(anyString());
+        verify(mockReviewApiServer, never()).getReviewsForBook(anyString());
+    }
+
+    //Notification retry policy
+    @Test
+    void GivenExhaustedRetryBudget_WhenNotifyUserWithBookReviews_ThenStopRetrying() {
+        // Mock setup for dependent services
+        testLibrary.setRetryPolicy(new ExponentialBackoffRetryPolicy(5, 0, 0, new RetryBudget(0, 1)));
+        when(mockBookApiClient.getISBN()).thenReturn("978-3-16-148410-0");
+        when(mockDBApiServer.getBookByISBN(mockBookApiClient.getISBN())).thenReturn(mockBookApiClient);
+        when(mockUserApiClient.getId()).thenReturn("123456789012");
+        when(mockDBApiServer.getUserById(mockUserApiClient.getId())).thenReturn(mockUserApiClient);
+        spyReviewsApiClient.add("review 1");
+        when(mockBookApiClient.getTitle()).thenReturn("Lord of the Rings");
+        when(mockReviewApiServer.getReviewsForBook(mockBookApiClient.getISBN())).thenReturn(spyReviewsApiClient);
+        String notification = "Reviews for 'Lord of the Rings':\n" + "review 1";
+        doThrow(new NotificationException("Notification failed!")).when(mockUserApiClient).sendNotification(notification);
+        // Act
+        assertThrows(NotificationException.class,() -> testLibrary.notifyUserWithBookReviews(mockBookApiClient.getISBN(),mockUserApiClient.getId()));
+        assertThrows(NotificationException.class,() -> testLibrary.notifyUserWithBookReviews(mockBookApiClient.getISBN(),mockUserApiClient.getId()));
+        // Verify: the single retry of the budget is used by the first call, the second call is not retried
+        verify(mockUserApiClient, times(3)).sendNotification(notification);
+    }
+
+    //Batched review notification
+    @Test
+    void GivenBooksWithAndWithoutReviews_WhenNotifyUserWithBookReviews_ThenSingleCombinedNotification() {
+        // Mock setup for dependent services
+        Book secondBook = mock(Book.class);
+        Book unreviewedBook = mock(Book.class);
+        when(mockBookApiClient.getTitle()).thenReturn("Lord of the Rings");
+        when(secondBook.getTitle()).thenReturn("The Hobbit");
+        List<String> ISBNs = Arrays.asList("978-3-16-148410-0", "978-0-306-40615-7", "978-1-4028-9462-6");
+        Map<String, Book> books = new HashMap<>();
+        books.put(ISBNs.get(0), mockBookApiClient);
+        books.put(ISBNs.get(1), secondBook);
+        books.put(ISBNs.get(2), unreviewedBook);
+        when(mockDBApiServer.getBooksByISBN(new LinkedHashSet<>(ISBNs))).thenReturn(books);
+        when(mockUserApiClient.getId()).thenReturn("123456789012");
+        when(mockDBApiServer.getUserById(mockUserApiClient.getId())).thenReturn(mockUserApiClient);
+        Map<String, List<String>> reviews = new LinkedHashMap<>();
+        reviews.put(ISBNs.get(0), Arrays.asList("review 1", "review 2"));
+        reviews.put(ISBNs.get(1), Collections.singletonList("review 3"));
+        reviews.put(ISBNs.get(2), Collections.emptyList());
+        when(mockReviewApiServer.getReviewsForBooks(new LinkedHashSet<>(ISBNs))).thenReturn(reviews);
+        // Act
+        testLibrary.notifyUserWithBookReviews(ISBNs, mockUserApiClient.getId());
+        // Verify
+        verify(mockUserApiClient, times(1)).sendNotification("Reviews for 'Lord of the Rings':\nreview 1\nreview 2"
+                + "\n\nReviews for 'The Hobbit':\nreview 3");
+        verify(mockDBApiServer, never()).getBookByISBN(anyString());
+        verify(mockReviewApiServer, never()).getReviewsForBook(anyString());
+        verify(mockReviewApiServer, times(1)).close();
+    }
+
+    @Test
+    void GivenMissingBook_WhenNotifyUserWithBookReviews_ThenBookNotFoundException_Booknotfound() {
+        // Mock setup for dependent services
+        List<String> ISBNs = Arrays.asList("978-3-16-148410-0", "978-0-306-40615-7");
+        when(mockDBApiServer.getBooksByISBN(new LinkedHashSet<>(ISBNs)))
+                .thenReturn(Collections.singletonMap(ISBNs.get(0), mockBookApiClient));
+        // Act
+        BookNotFoundException thrown = assertThrows(BookNotFoundException.class,() -> testLibrary.notifyUserWithBookReviews(ISBNs, "123456789012"));
+        assertEquals("Book not found!", thrown.getMessage());
+        // Verify
+        verify(mockReviewApiServer, never()).getReviewsForBooks(anyCollection());
+        verify(mockUserApiClient, never()).sendNotification(anyString());
+    }
+
+    //Bounded review notification
+    @Test
+    void GivenNotificationLimits_WhenNotifyUserWithBookReviews_ThenOnlyFittingReviewsStreamed() {
+        // Mock setup for dependent services
+        testLibrary.setNotificationLimits(2, 1000);
+        when(mockBookApiClient.getISBN()).thenReturn("978-3-16-148410-0");
+        when(mockDBApiServer.getBookByISBN(mockBookApiClient.getISBN())).thenReturn(mockBookApiClient);
+        when(mockUserApiClient.getId()).thenReturn("123456789012");
+        when(mockDBApiServer.getUserById(mockUserApiClient.getId())).thenReturn(mockUserApiClient);
+        when(mockBookApiClient.getTitle()).thenReturn("Lord of the Rings");
+        Iterator<String> reviews = Arrays.asList("review 1", "review 2", "review 3", "review 4").iterator();
+        when(mockReviewApiServer.iterateReviewsForBook(mockBookApiClient.getISBN())).thenReturn(reviews);
+        // Act
+        testLibrary.notifyUserWithBookReviews(mockBookApiClient.getISBN(), mockUserApiClient.getId());
+        // Verify
+        ArgumentCaptor<MessageBody> notification = ArgumentCaptor.forClass(MessageBody.class);
+        verify(mockUserApiClient, times(1)).sendNotification(notification.capture());
+        assertEquals("Reviews for 'Lord of the Rings':\nreview 1\nreview 2\n...", notification.getValue().toString());
+        assertEquals("review 3", reviews.next());
+        verify(mockUserApiClient, never()).sendNotification(anyString());
+        verify(mockReviewApiServer, never()).getReviewsForBook(anyString());
+        verify(mockReviewApiServer, times(1)).close();
+    }
+
+    @Test
+    void GivenTitleLongerThanNotificationLimit_WhenNotifyUserWithBookReviews_ThenTitleShortenedToFit() {
+        // Mock setup for dependent services
+        testLibrary.setNotificationLimits(2, 30);
+        when(mockBookApiClient.getISBN()).thenReturn("978-3-16-148410-0");
+        when(mockDBApiServer.getBookByISBN(mockBookApiClient.getISBN())).thenReturn(mockBookApiClient);
+        when(mockUserApiClient.getId()).thenReturn("123456789012");
+        when(mockDBApiServer.getUserById(mockUserApiClient.getId())).thenReturn(mockUserApiClient);
+        when(mockBookApiClient.getTitle()).thenReturn("The Lord of the Rings: The Fellowship of the Ring");
+        Iterator<String> reviews = Arrays.asList("review 1", "review 2").iterator();
+        when(mockReviewApiServer.iterateReviewsForBook(mockBookApiClient.getISBN())).thenReturn(reviews);
+        // Act
+        testLibrary.notifyUserWithBookReviews(mockBookApiClient.getISBN(), mockUserApiClient.getId());
+        // Verify
+        ArgumentCaptor<MessageBody> notification = ArgumentCaptor.forClass(MessageBody.class);
+        verify(mockUserApiClient, times(1)).sendNotification(notification.capture());
+        assertEquals("Reviews for 'The Lord...':\n...", notification.getValue().toString());
+        assertEquals("review 1", reviews.next());
+    }
+
+    //Catalog search
+    @Test
+    void GivenAddedBooks_WhenfindBooks_ThenMatchingBooksReturnedWithoutDatabase() {
+        // Mock the behavior
+        Book hobbit = new Book("978-0-306-40615-7", "The Hobbit", "J.R.R. Tolkien");
+        Book rings = new Book("978-3-16-148410-0", "The Lord of the Rings", "J.R.R.  Tolkien");
+        Book dune = new Book("978-1-4028-9462-6", "Dune", "Frank Herbert");
+        testLibrary.addBook(rings);
+        testLibrary.addBooks(Arrays.asList(hobbit, dune));
+        // Act
+        List<Book> byAuthor = testLibrary.findBooksByAuthor("j.r.r. tolkien");
+        List<Book> byTitle = testLibrary.findBooksByTitlePrefix("THE ");
+        List<Book> none = testLibrary.findBooksByTitlePrefix("Foundation");
+        // Assertions
+        assertEquals(Arrays.asList(hobbit, rings), byAuthor);
+        assertEquals(Arrays.asList(hobbit, rings), byTitle);
+        assertEquals(Collections.emptyList(), none);
+        // Verify
+        verify(mockDBApiServer, times(1)).getBookByISBN(anyString());
+        verify(mockDBApiServer, times(1)).getBooksByISBN(anyCollection());
+    }
+
+    @Test
+    void GivenPrefixEndingWithSpace_WhenfindBooksByTitlePrefix_ThenOnlyWholeWordsMatched() {
+        // Mock the behavior
+        Book hobbit = new Book("978-0-306-40615-7", "The Hobbit", "J.R.R. Tolkien");
+        Book theory = new Book("978-3-16-148410-0", "Theory of Everything", "Stephen Hawking");
+        Book dune = new Book("978-1-4028-9462-6", "Dune", "Frank Herbert");
+        testLibrary.addBooks(Arrays.asList(hobbit, theory, dune));
+        // Act
+        List<Book> words = testLibrary.findBooksByTitlePrefix("the   ");
+        List<Book> prefixes = testLibrary.findBooksByTitlePrefix("The");
+        List<Book> whole = testLibrary.findBooksByTitlePrefix("Dune ");
+        // Assertions
+        assertEquals(Collections.singletonList(hobbit), words);
+        assertEquals(Arrays.asList(hobbit, theory), prefixes);
+        assertEquals(Collections.singletonList(dune), whole);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "   "})
+    void GivenBlankPrefix_WhenfindBooksByTitlePrefix_ThenIllegalArgumentException_Invalidtitleprefix(String prefix) {
+        // Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,() -> testLibrary.findBooksByTitlePrefix(prefix));
+        assertEquals("Invalid title prefix.", thrown.getMessage());
+    }
+
+    @Test
+    void GivenStoredBorrowedBook_WhenindexBooks_ThenBookFindable() {
+        // Mock the behavior
+        Book rings = new Book("978-3-16-148410-0", "The Lord of the Rings", "J.R.R. Tolkien");
+        rings.tryBorrow("111111111111");
+        // Act
+        testLibrary.indexBooks(Collections.singletonList(rings));
+        // Assertions
+        assertEquals(Collections.singletonList(rings), testLibrary.findBooksByAuthor("J.R.R. Tolkien"));
+        assertThrows(IllegalArgumentException.class,() -> testLibrary.indexBooks(Collections.singletonList(
+                new Book("978-3-16-148410-0", "", "J.R.R. Tolkien"))));
+        // Verify
+        verify(mockDBApiServer, never()).getBookByISBN(anyString());
+    }
+
+    //Borrowed books of a user
+    @Test
+    void GivenBorrowedAndReturnedBooks_WhengetBorrowedBooks_ThenOnlyHeldBooksReturned() {
+        // Mock the behavior
+        Book hobbit = new Book("978-0-306-40615-7", "The Hobbit", "J.R.R. Tolkien");
+        Book rings = new Book("978-3-16-148410-0", "The Lord of the Rings", "J.R.R. Tolkien");
+        Book dune = new Book("978-1-4028-9462-6", "Dune", "Frank Herbert");
+        for (Book book : Arrays.asList(hobbit, rings, dune)) {
+            when(mockDBApiServer.getBookByISBN(book.getISBN())).thenReturn(book);
+        }
+        when(mockDBApiServer.getUserById(anyString())).thenReturn(mockUserApiClient);
+        Map<String, Book> held = new HashMap<>();
+        held.put(hobbit.getISBN(), hobbit);
+        held.put(rings.getISBN(), rings);
+        when(mockDBApiServer.getBooksByISBN(new TreeSet<>(held.keySet()))).thenReturn(held);
+        testLibrary.borrowBook(rings.getISBN(), "111111111111");
+        testLibrary.borrowBook(dune.getISBN(), "111111111111");
+        testLibrary.borrowBook(hobbit.getISBN(), "111111111111");
+        assertThrows(BookAlreadyBorrowedException.class,() -> testLibrary.borrowBook(rings.getISBN(), "222222222222"));
+        testLibrary.returnBook(dune.getISBN());
+        // Act
+        List<Book> borrowed = testLibrary.getBorrowedBooks("111111111111");
+        // Assertions
+        assertEquals(Arrays.asList(hobbit, rings), borrowed);
+        assertEquals(2, testLibrary.countBorrowed("111111111111"));
+        assertEquals(0, testLibrary.countBorrowed("222222222222"));
+        assertEquals(Collections.emptyList(), testLibrary.getBorrowedBooks("222222222222"));
+        // Verify
+        verify(mockDBApiServer, times(1)).getBooksByISBN(anyCollection());
+    }
+
+    @Test
+    void GivenBookReturnedWithOtherISBNSpelling_WhencountBorrowed_ThenBookNoLongerHeld() {
+        // Mock the behavior
+        Book rings = new Book("978-3-16-148410-0", "The Lord of the Rings", "J.R.R. Tolkien");
+        when(mockDBApiServer.getBookByISBN("978-3-16-148410-0")).thenReturn(rings);
+        when(mockDBApiServer.getBookByISBN("9783161484100")).thenReturn(rings);
+        when(mockDBApiServer.getUserById("111111111111")).thenReturn(mockUserApiClient);
+        testLibrary.borrowBook("978-3-16-148410-0", "111111111111");
+        // Act
+        testLibrary.returnBook("9783161484100");
+        // Assertions
+        assertEquals(0, testLibrary.countBorrowed("111111111111"));
+        assertEquals(Collections.emptyList(), testLibrary.getBorrowedBooks("111111111111"));
+    }
+
+    @Test
+    void GivenDatabaseCopyingBooks_WhenborrowBookConcurrently_ThenOnlyDatabaseBorrowerCounted() throws Exception {
+        // Mock the behavior
+        CompactDatabaseService database = new CompactDatabaseService();
+        testLibrary = new Library(database, mockReviewApiServer);
+        testLibrary.addBook(new Book("978-3-16-148410-0", "The Lord of the Rings", "J.R.R. Tolkien"));
+        testLibrary.registerUser(new User("Frodo", "111111111111", mockNotificationApiClient));
+        testLibrary.registerUser(new User("Sam", "222222222222", mockNotificationApiClient));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 1000; round++) {
+                // Act
+                CyclicBarrier start = new CyclicBarrier(2);
+                Future<?> first = executor.submit(() -> borrowAfter(start, "111111111111"));
+                Future<?> second = executor.submit(() -> borrowAfter(start, "222222222222"));
+                first.get();
+                second.get();
+                // Assertions
+                String borrowerId = database.getBorrowerId("978-3-16-148410-0");
+                String otherId = "111111111111".equals(borrowerId) ? "222222222222" : "111111111111";
+                assertEquals(1, testLibrary.countBorrowed(borrowerId));
+                assertEquals(0, testLibrary.countBorrowed(otherId));
+                testLibrary.returnBook("978-3-16-148410-0");
+                assertEquals(0, testLibrary.countBorrowed(borrowerId));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Borrows the book once both threads reached the barrier, ignoring the failure of the thread that loses.
+    private Void borrowAfter(CyclicBarrier start, String userId) throws Exception {
+        start.await();
+        try {
+            testLibrary.borrowBook("978-3-16-148410-0", userId);
+        } catch (BookAlreadyBorrowedException e) {
+            // The other thread borrowed the book first.
+        }
+        return null;
+    }
+
+    @Test
+    void GivenIndexedBorrowedBooks_WhengetBorrowedBooks_ThenHeldBooksRestored() {
+        // Mock the behavior
+        Book hobbit = new Book("978-0-306-40615-7", "The Hobbit", "J.R.R. Tolkien");
+        Book rings = new Book("978-3-16-148410-0", "The Lord of the Rings", "J.R.R. Tolkien");
+        Book dune = new Book("978-1-4028-9462-6", "Dune", "Frank Herbert");
+        hobbit.tryBorrow("111111111111");
+        rings.tryBorrow("222222222222");
+        when(mockDBApiServer.getBooksByISBN(Collections.singleton(hobbit.getISBN())))
+                .thenReturn(Collections.singletonMap(hobbit.getISBN(), hobbit));
+        when(mockDBApiServer.getBookByISBN(rings.getISBN())).thenReturn(rings);
+        // Act
+        testLibrary.indexBooks(Arrays.asList(hobbit, rings, dune));
+        testLibrary.returnBook(rings.getISBN());
+        // Assertions
+        assertEquals(Collections.singletonList(hobbit), testLibrary.getBorrowedBooks("111111111111"));
+        assertEquals(1, testLibrary.countBorrowed("111111111111"));
+        assertEquals(0, testLibrary.countBorrowed("222222222222"));
+    }
+
+    @Test
+    void GivenInvalidId_WhencountBorrowed_ThenIllegalArgumentException_InvaliduserId() {
+        // Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,() -> testLibrary.countBorrowed("12345"));
+        assertEquals("Invalid user Id.", thrown.getMessage());
+    }
+
+    //Metrics
+    @Test
+    void GivenMetrics_WhenOperationsFail_ThenErrorsCountedByType() {
+        // Mock the behavior
+        InMemoryLibraryMetrics metrics = new InMemoryLibraryMetrics();
+        testLibrary.setMetrics(metrics);
+        Book book = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        when(mockDBApiServer.getBookByISBN(book.getISBN())).thenReturn(book);
+        when(mockDBApiServer.getUserById("123456789012")).thenReturn(mockUserApiClient);
+        when(mockReviewApiServer.getReviewsForBook(book.getISBN())).thenReturn(Arrays.asList("review 1"));
+        doThrow(new NotificationException("Notification failed!")).when(mockUserApiClient).sendNotification(anyString());
+        // Act
+        testLibrary.borrowBook(book.getISBN(), "123456789012");
+        assertThrows(BookAlreadyBorrowedException.class,() -> testLibrary.borrowBook(book.getISBN(), "123456789012"));
+        assertThrows(BookNotFoundException.class,() -> testLibrary.borrowBook("978-0-306-40615-7", "123456789012"));
+        assertThrows(NotificationException.class,() -> testLibrary.notifyUserWithBookReviews(book.getISBN(), "123456789012"));
+        // Assertions
+        assertEquals(3, metrics.getCallCount(Operation.BORROW_BOOK));
+        assertEquals(2, metrics.getErrorCount(Operation.BORROW_BOOK));
+        assertEquals(1, metrics.getErrorCount(Operation.BORROW_BOOK, BookAlreadyBorrowedException.class));
+        assertEquals(1, metrics.getErrorCount(BookNotFoundException.class));
+        assertEquals(1, metrics.getErrorCount(Operation.NOTIFY_USER_WITH_BOOK_REVIEWS, NotificationException.class));
+        assertEquals(4, metrics.getNotificationRetryCount());
+        assertEquals(1, metrics.getReviewFetchLatency().getCount());
+        assertEquals(0, metrics.getCallCount(Operation.RETURN_BOOK));
+    }
+
+    @Test
+    void GivenOpenCircuitBreaker_WhennotifyUserWithBookReviews_ThenFailedFetchCountedAndServiceReused() {
+        // Mock the behavior
+        InMemoryLibraryMetrics metrics = new InMemoryLibraryMetrics();
+        testLibrary = new Library(mockDBApiServer, new ReviewServicePool(() -> mockReviewApiServer, 1, service -> true, 0));
+        testLibrary.setMetrics(metrics);
+        Book book = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        when(mockDBApiServer.getBookByISBN(book.getISBN())).thenReturn(book);
+        when(mockDBApiServer.getUserById("123456789012")).thenReturn(mockUserApiClient);
+        when(mockReviewApiServer.getReviewsForBook(book.getISBN()))
+                .thenThrow(new ReviewServiceUnavailableException("Review service unavailable!"));
+        // Act
+        assertThrows(ReviewServiceUnavailableException.class,() -> testLibrary.notifyUserWithBookReviews(book.getISBN(), "123456789012"));
+        // Assertions
+        assertEquals(1, metrics.getReviewFetchLatency().getCount());
+        assertEquals(1, metrics.getReviewFetchFailureCount());
+        // Verify
+        verify(mockReviewApiServer, never()).close();
+    }
+
+    @Test
+    void GivenNullMetrics_WhensetMetrics_ThenIllegalArgumentException_Invalidmetrics() {
+        // Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,() -> testLibrary.setMetrics(null));
+        assertEquals("Invalid metrics.", thrown.getMessage());
+    }
+
+    //Events
+    @Test
+    void GivenFailingNotifications_WhengetBookByISBN_ThenRetriesAndSkipPublished() {
+        // Mock the behavior
+        List<LibraryEvent> events = new ArrayList<>();
+        testLibrary.setEventListener(events::add);
+        Book book = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        when(mockDBApiServer.getBookByISBN(book.getISBN())).thenReturn(book);
+        when(mockDBApiServer.getUserById("123456789012")).thenReturn(mockUserApiClient);
+        when(mockReviewApiServer.getReviewsForBook(book.getISBN())).thenReturn(Arrays.asList("review 1"));
+        doThrow(new NotificationException("Notification failed!")).when(mockUserApiClient).sendNotification(anyString());
+        // Act
+        assertSame(book, testLibrary.getBookByISBN(book.getISBN(), "123456789012"));
+        // Assertions
+        assertEquals(5, events.size());
+        assertEquals(LibraryEvent.Type.NOTIFICATION_RETRY, events.get(0).getType());
+        assertEquals("Notification failed! Retrying attempt 4/5", events.get(3).getMessage());
+        assertEquals(LibraryEvent.Type.NOTIFICATION_SKIPPED, events.get(4).getType());
+        assertEquals(NotificationException.class, events.get(4).getCause().getClass());
+    }
+
+    @Test
+    void GivenNotificationDispatcherAndFailingNotifications_WhengetBookByISBN_ThenSkipPublished() {
+        // Mock the behavior
+        List<LibraryEvent> events = new CopyOnWriteArrayList<>();
+        testLibrary.setEventListener(events::add);
+        NotificationDispatcher dispatcher = new NotificationDispatcher(Executors.newSingleThreadExecutor(), 1);
+        testLibrary.setNotificationDispatcher(dispatcher);
+        Book book = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        when(mockDBApiServer.getBookByISBN(book.getISBN())).thenReturn(book);
+        when(mockDBApiServer.getUserById("123456789012")).thenReturn(mockUserApiClient);
+        when(mockReviewApiServer.getReviewsForBook(book.getISBN())).thenReturn(Arrays.asList("review 1"));
+        doThrow(new NotificationException("Notification failed!")).when(mockUserApiClient).sendNotification(anyString());
+        // Act
+        assertSame(book, testLibrary.getBookByISBN(book.getISBN(), "123456789012"));
+        dispatcher.close();
+        // Assertions
+        assertEquals(1, dispatcher.getFailedCount());
+        assertEquals(LibraryEvent.Type.NOTIFICATION_SKIPPED, events.get(events.size() - 1).getType());
+        assertEquals(NotificationException.class, events.get(events.size() - 1).getCause().getClass());
+    }
+
+    //Membership filters
+    @Test
+    void GivenMembershipFilters_WhenUnknownBookOrUser_ThenDatabaseNotQueried() {
+        // Mock the behavior
+        testLibrary.setMembershipFilters(new BloomFilter(1000, 0.001), new BloomFilter(1000, 0.001));
+        Book book = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        when(mockUserApiClient.getId()).thenReturn("123456789012");
+        when(mockUserApiClient.getName()).thenReturn("Rotem");
+        when(mockUserApiClient.getNotificationService()).thenReturn(mockNotificationApiClient);
+        testLibrary.addBook(book);
+        testLibrary.registerUser(mockUserApiClient);
+        when(mockDBApiServer.getBookByISBN(book.getISBN())).thenReturn(book);
+        when(mockDBApiServer.getUserById("123456789012")).thenReturn(mockUserApiClient);
+        // Act
+        assertThrows(BookNotFoundException.class,() -> testLibrary.borrowBook("978-0-306-40615-7", "123456789012"));
+        assertThrows(UserNotRegisteredException.class,() -> testLibrary.borrowBook(book.getISBN(), "123456789013"));
+        testLibrary.borrowBook(book.getISBN(), "123456789012");
+        // Verify
+        verify(mockDBApiServer, never()).getBookByISBN("978-0-306-40615-7");
+        verify(mockDBApiServer, never()).getUserById("123456789013");
+        verify(mockDBApiServer, times(1)).borrowBook(book.getISBN(), "123456789012");
+        // The existence checks of addBook and registerUser always query the database.
+        verify(mockDBApiServer, times(3)).getBookByISBN(book.getISBN());
+        verify(mockDBApiServer, times(2)).getUserById("123456789012");
+    }
+
+    @Test
+    void GivenIndexedBorrowedBook_WhenreturnBookWithMembershipFilters_ThenBookReturned() {
+        // Mock the behavior
+        testLibrary.setMembershipFilters(new BloomFilter(1000, 0.001), new BloomFilter(1000, 0.001));
+        Book book = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        book.tryBorrow("123456789012");
+        when(mockDBApiServer.getBookByISBN(book.getISBN())).thenReturn(book);
+        testLibrary.indexBooks(Collections.singletonList(book));
+        // Act
+        testLibrary.returnBook(book.getISBN());
+        // Assertions
+        assertFalse(book.isBorrowed());
+        // Verify
+        verify(mockDBApiServer, times(1)).returnBook(book.getISBN());
+    }
+
+    @Test
+    void GivenStoredBookMissingFromMembershipFilter_WhenaddBook_ThenIllegalArgumentException_Bookalreadyexists() {
+        // Mock the behavior
+        testLibrary.setMembershipFilters(new BloomFilter(1000, 0.001), new BloomFilter(1000, 0.001));
+        Book stored = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        when(mockDBApiServer.getBookByISBN(stored.getISBN())).thenReturn(stored);
+        // Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,
+                () -> testLibrary.addBook(new Book("978-3-16-148410-0", "The Hobbit", "Tolkien")));
+        // Assertions
+        assertEquals("Book already exists.", thrown.getMessage());
+        // Verify
+        verify(mockDBApiServer, never()).addBook(anyString(), any(Book.class));
+    }
 }
@@ -0,0 +1,60 @@
+package ac.il.bgu.qa;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestUserId {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"123456789012","000000000000","999999999999","000000000017"})
+    void GivenValidId_WhenisValid_ThenTrue(String id) {
+        assertTrue(UserId.isValid(id));
+        assertTrue(UserId.isValid(new StringBuilder(id)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"","12345678901","1234567890123","12345678901a","-12345678901","12345 678901"})
+    void GivenInvalidId_WhenisValid_ThenFalse(String id) {
+        assertFalse(UserId.isValid(id));
+        assertEquals(-1, UserId.toLong(id));
+    }
+
+    @Test
+    void GivenNullId_WhenisValid_ThenFalse() {
+        assertFalse(UserId.isValid(null));
+        assertEquals(-1, UserId.toLong(null));
+    }
+
+    @Test
+    void GivenValidId_Whenparse_ThenNumericValue() {
+        assertEquals(123456789012L, UserId.parse("123456789012").longValue());
+        assertEquals(123456789012L, UserId.toLong("123456789012"));
+        assertEquals(UserId.of(123456789012L), UserId.parse("123456789012"));
+    }
+
+    @Test
+    void GivenIdWithLeadingZeros_WhentoString_ThenTwelveDigits() {
+        assertEquals(17, UserId.parse("000000000017").longValue());
+        assertEquals("000000000017", UserId.parse("000000000017").toString());
+        assertEquals("000000000000", UserId.of(0).toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"12345678901","1234567890123"})
+    void GivenWrongLength_Whenparse_ThenIllegalArgumentException_InvaliduserId(String id) {
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,() -> UserId.parse(id));
+        assertEquals("Invalid user Id.", thrown.getMessage());
+    }
+
+    @Test
+    void GivenOutOfRangeValue_Whenof_ThenIllegalArgumentException_InvaliduserId() {
+        assertThrows(IllegalArgumentException.class,() -> UserId.of(-1));
+        assertThrows(IllegalArgumentException.class,() -> UserId.of(1_000_000_000_000L));
+    }
+}
@@ -0,0 +1,91 @@
+package ac.il.bgu.qa.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAsyncLibraryEventListener {
+
+    @Test
+    void GivenEvents_WhenonEvent_ThenDeliveredInOrderOnBackgroundThread() {
+        // Mock the behavior
+        List<LibraryEvent> received = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        AsyncLibraryEventListener testListener = new AsyncLibraryEventListener(event -> {
+            received.add(event);
+            threads.add(Thread.currentThread().getName());
+        }, 16, 0);
+        LibraryEvent first = LibraryEvent.notificationRetry(1, 5, null);
+        LibraryEvent second = LibraryEvent.notificationRetry(2, 5, null);
+        // Act
+        testListener.onEvent(first);
+        testListener.onEvent(second);
+        testListener.close();
+        // Assertions
+        assertEquals(2, testListener.getPublishedCount());
+        assertEquals(2, testListener.getDeliveredCount());
+        assertEquals(0, testListener.getDroppedCount());
+        assertSame(first, received.get(0));
+        assertSame(second, received.get(1));
+        assertEquals("library-events", threads.get(0));
+    }
+
+    @Test
+    void GivenBlockedListener_WhenBufferFull_ThenEventsDroppedAndReported() throws InterruptedException {
+        // Mock the behavior
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<LibraryEvent> received = new CopyOnWriteArrayList<>();
+        AsyncLibraryEventListener testListener = new AsyncLibraryEventListener(event -> {
+            received.add(event);
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 4, 0);
+        testListener.onEvent(LibraryEvent.notificationRetry(1, 5, null));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        // Act
+        for (int i = 0; i < 10; i++) {
+            testListener.onEvent(LibraryEvent.notificationRetry(2, 5, null));
+        }
+        release.countDown();
+        testListener.close();
+        // Assertions
+        assertEquals(5, testListener.getPublishedCount());
+        assertEquals(6, testListener.getDroppedCount());
+        assertEquals(5, testListener.getDeliveredCount());
+        LibraryEvent report = received.get(received.size() - 1);
+        assertEquals(LibraryEvent.Type.EVENTS_DROPPED, report.getType());
+        assertEquals("6 events dropped", report.getMessage());
+    }
+
+    @Test
+    void GivenRateLimit_WhenonEvent_ThenExcessEventsDropped() {
+        // Mock the behavior
+        AsyncLibraryEventListener testListener = new AsyncLibraryEventListener(LibraryEventListener.ignoring(), 1024, 10);
+        // Act
+        for (int i = 0; i < 100; i++) {
+            testListener.onEvent(LibraryEvent.notificationRetry(1, 5, null));
+        }
+        testListener.close();
+        // Assertions
+        assertTrue(testListener.getPublishedCount() <= 20);
+        assertEquals(100, testListener.getPublishedCount() + testListener.getDroppedCount());
+    }
+
+    @Test
+    void GivenInvalidCapacity_WhenConstructed_ThenIllegalArgumentException() {
+        // Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,
+                () -> new AsyncLibraryEventListener(LibraryEventListener.ignoring(), 0, 0));
+        assertEquals("Invalid capacity.", thrown.getMessage());
+    }
+}
@@ -0,0 +1,70 @@
+package ac.il.bgu.qa.metrics;
+
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.metrics.LibraryMetrics.Operation;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestInMemoryLibraryMetrics {
+
+    @Test
+    void GivenDurations_WhengetPercentileNanos_ThenWithinBucketPrecision() {
+        // Mock the behavior
+        LatencyHistogram histogram = new LatencyHistogram();
+        // Act
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        // Assertions
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(500_500.0, histogram.getMeanNanos());
+        long median = histogram.getPercentileNanos(50);
+        assertTrue(median >= 500_000 && median <= 500_000 * 1.125, "median " + median);
+        long p99 = histogram.getPercentileNanos(99);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000, "p99 " + p99);
+        assertEquals(1_000_000, histogram.getPercentileNanos(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentileNanos(101));
+    }
+
+    @Test
+    void GivenEmptyHistogram_WhengetPercentileNanos_ThenZero() {
+        // Act
+        LatencyHistogram histogram = new LatencyHistogram();
+        // Assertions
+        assertEquals(0, histogram.getPercentileNanos(99));
+        assertEquals(0.0, histogram.getMeanNanos());
+    }
+
+    @Test
+    void GivenFailedOperations_WhengetErrorCounts_ThenCountedByType() {
+        // Mock the behavior
+        InMemoryLibraryMetrics metrics = new InMemoryLibraryMetrics();
+        // Act
+        metrics.recordOperation(Operation.ADD_BOOK, metrics.startTimer(), null);
+        metrics.recordOperation(Operation.ADD_BOOK, metrics.startTimer(), new IllegalArgumentException("Invalid ISBN."));
+        metrics.recordOperation(Operation.BORROW_BOOK, metrics.startTimer(), new BookNotFoundException("Book not found!"));
+        metrics.recordOperation(Operation.RETURN_BOOK, metrics.startTimer(), new BookNotFoundException("Book not found!"));
+        metrics.recordReviewFetch(metrics.startTimer(), false);
+        metrics.recordNotificationRetry();
+        // Assertions
+        assertEquals(2, metrics.getCallCount(Operation.ADD_BOOK));
+        assertEquals(1, metrics.getErrorCount(Operation.ADD_BOOK));
+        assertEquals(1, metrics.getErrorCounts(Operation.ADD_BOOK).get(IllegalArgumentException.class));
+        assertEquals(2, metrics.getErrorCount(BookNotFoundException.class));
+        assertEquals(0, metrics.getErrorCount(Operation.GET_BOOK_BY_ISBN));
+        assertEquals(1, metrics.getReviewFetchFailureCount());
+        assertEquals(1, metrics.getReviewFetchLatency().getCount());
+        assertEquals(1, metrics.getNotificationRetryCount());
+    }
+
+    @Test
+    void GivenNoopMetrics_WhenstartTimer_ThenClockNotRead() {
+        // Act
+        LibraryMetrics metrics = LibraryMetrics.noop();
+        // Assertions
+        assertEquals(0, metrics.startTimer());
+        assertSame(metrics, LibraryMetrics.noop());
+    }
+}
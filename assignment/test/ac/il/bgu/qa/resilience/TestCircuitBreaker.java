@@ -0,0 +1,87 @@
+package ac.il.bgu.qa.resilience;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCircuitBreaker {
+
+    long now;
+    CircuitBreaker testBreaker;
+
+    @BeforeEach
+    public void init() {
+        now = 0;
+        // Opens at 50% failed or slow calls among at least 4 of the last 4 calls, for 1 second.
+        testBreaker = new CircuitBreaker(50, 50, 100, 4, 4, 1000, 2, () -> now);
+    }
+
+    @Test
+    void GivenHealthyCalls_WhentryAcquirePermission_ThenClosed() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(testBreaker.tryAcquirePermission());
+            testBreaker.onSuccess(0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, testBreaker.getState());
+    }
+
+    @Test
+    void GivenFailureRateReached_WhentryAcquirePermission_ThenOpenAndFailFast() {
+        testBreaker.onSuccess(0);
+        testBreaker.onFailure(0);
+        testBreaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.CLOSED, testBreaker.getState());
+        testBreaker.onFailure(0);
+
+        assertEquals(CircuitBreaker.State.OPEN, testBreaker.getState());
+        assertFalse(testBreaker.tryAcquirePermission());
+        assertEquals(1, testBreaker.getNotPermittedCount());
+    }
+
+    @Test
+    void GivenSlowCallRateReached_WhentryAcquirePermission_ThenOpen() {
+        long slow = TimeUnit.MILLISECONDS.toNanos(100);
+        testBreaker.onSuccess(slow);
+        testBreaker.onSuccess(0);
+        testBreaker.onSuccess(0);
+        testBreaker.onSuccess(slow);
+
+        assertEquals(CircuitBreaker.State.OPEN, testBreaker.getState());
+    }
+
+    @Test
+    void GivenOpenDurationPassed_WhenTrialCallsSucceed_ThenClosed() {
+        for (int i = 0; i < 4; i++) {
+            testBreaker.onFailure(0);
+        }
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+
+        assertTrue(testBreaker.tryAcquirePermission());
+        assertTrue(testBreaker.tryAcquirePermission());
+        assertFalse(testBreaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, testBreaker.getState());
+        testBreaker.onSuccess(0);
+        testBreaker.onSuccess(0);
+
+        assertEquals(CircuitBreaker.State.CLOSED, testBreaker.getState());
+    }
+
+    @Test
+    void GivenOpenDurationPassed_WhenTrialCallsFail_ThenOpenAgain() {
+        for (int i = 0; i < 4; i++) {
+            testBreaker.onFailure(0);
+        }
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+
+        assertTrue(testBreaker.tryAcquirePermission());
+        assertTrue(testBreaker.tryAcquirePermission());
+        testBreaker.onFailure(0);
+        testBreaker.onSuccess(0);
+
+        assertEquals(CircuitBreaker.State.OPEN, testBreaker.getState());
+        assertFalse(testBreaker.tryAcquirePermission());
+    }
+}
@@ -0,0 +1,86 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestBatchingNotificationService {
+
+    @Mock
+    NotificationService mockNotificationApiClient;
+
+    @Mock
+    ScheduledExecutorService mockScheduler;
+
+    BatchingNotificationService testBatcher;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        testBatcher = new BatchingNotificationService(mockNotificationApiClient, 1000, 3, mockScheduler);
+    }
+
+    @Test
+    void GivenFullBatch_WhennotifyUser_ThenMessagesDeliveredOnce() {
+        // Act
+        testBatcher.notifyUser("123456789012", "message 1");
+        testBatcher.notifyUser("123456789012", "message 2");
+        testBatcher.notifyUser("123456789012", "message 3");
+        // Assertions
+        assertEquals(3, testBatcher.getReceivedCount());
+        assertEquals(1, testBatcher.getDeliveredCount());
+        assertEquals(0, testBatcher.getPendingBatchCount());
+        // Verify
+        verify(mockNotificationApiClient, times(1)).notifyUser("123456789012", "message 1\n\nmessage 2\n\nmessage 3");
+        verify(mockScheduler, times(1)).schedule(any(Runnable.class), eq(1000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void GivenEndOfWindow_WhennotifyUser_ThenPendingMessagesDelivered() {
+        // Act
+        testBatcher.notifyUser("123456789012", "message 1");
+        testBatcher.notifyUser("210987654321", "message 2");
+        testBatcher.notifyUser("123456789012", "message 3");
+        ArgumentCaptor<Runnable> windows = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockScheduler, times(2)).schedule(windows.capture(), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        windows.getAllValues().get(0).run();
+        // Verify
+        verify(mockNotificationApiClient, times(1)).notifyUser("123456789012", "message 1\n\nmessage 3");
+        verify(mockNotificationApiClient, never()).notifyUser(eq("210987654321"), anyString());
+        assertEquals(1, testBatcher.getPendingBatchCount());
+    }
+
+    @Test
+    void GivenPendingMessages_Whenclose_ThenMessagesDeliveredAndLaterMessagesSentDirectly() {
+        // Act
+        testBatcher.notifyUser("123456789012", "message 1");
+        testBatcher.close();
+        testBatcher.notifyUser("123456789012", "message 2");
+        // Verify
+        verify(mockNotificationApiClient, times(1)).notifyUser("123456789012", "message 1");
+        verify(mockNotificationApiClient, times(1)).notifyUser("123456789012", "message 2");
+        verify(mockScheduler, never()).shutdown();
+        assertEquals(0, testBatcher.getPendingBatchCount());
+    }
+
+    @Test
+    void GivenFailingNotificationService_Whenflush_ThenFailureCounted() {
+        // Mock the behavior
+        doThrow(new NotificationException("Notification failed!")).when(mockNotificationApiClient).notifyUser(anyString(), anyString());
+        testBatcher.notifyUser("123456789012", "message 1");
+        // Act
+        testBatcher.flush();
+        // Assertions
+        assertEquals(1, testBatcher.getFailedCount());
+        assertEquals(0, testBatcher.getDeliveredCount());
+    }
+}
@@ -0,0 +1,143 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestCachingDatabaseService {
+
+    @Mock
+    DatabaseService mockDBApiServer;
+
+    @Mock
+    User mockUserApiClient;
+
+    long now;
+    CachingDatabaseService testCache;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        now = 0;
+        testCache = new CachingDatabaseService(mockDBApiServer, 10, 1000, 10, 60_000, () -> now);
+    }
+
+    @Test
+    void GivenCachedBook_WhengetBookByISBNWithOtherSpelling_ThenDatabaseAskedForThatSpelling() {
+        // Mock the behavior
+        Book book = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        when(mockDBApiServer.getBookByISBN("978-3-16-148410-0")).thenReturn(book);
+        // Act
+        Book first = testCache.getBookByISBN("978-3-16-148410-0");
+        Book second = testCache.getBookByISBN("9783161484100");
+        // Assertions
+        assertSame(book, first);
+        assertNull(second);
+        assertEquals(0, testCache.getBookHitCount());
+        assertEquals(2, testCache.getBookMissCount());
+        // Verify
+        verify(mockDBApiServer, times(1)).getBookByISBN("978-3-16-148410-0");
+        verify(mockDBApiServer, times(1)).getBookByISBN("9783161484100");
+    }
+
+    @Test
+    void GivenCachedBook_WhenborrowBook_ThenBookReadAgain() {
+        // Mock the behavior
+        Book book = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        when(mockDBApiServer.getBookByISBN("978-3-16-148410-0")).thenReturn(book);
+        testCache.getBookByISBN("978-3-16-148410-0");
+        // Act
+        testCache.borrowBook("978-3-16-148410-0", "123456789012");
+        testCache.getBookByISBN("978-3-16-148410-0");
+        testCache.returnBook("978-3-16-148410-0");
+        testCache.getBookByISBN("978-3-16-148410-0");
+        // Verify
+        verify(mockDBApiServer, times(1)).borrowBook("978-3-16-148410-0", "123456789012");
+        verify(mockDBApiServer, times(1)).returnBook("978-3-16-148410-0");
+        verify(mockDBApiServer, times(3)).getBookByISBN("978-3-16-148410-0");
+    }
+
+    @Test
+    void GivenFailingWrite_WhenborrowBook_ThenBookStillInvalidated() {
+        // Mock the behavior
+        Book book = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        when(mockDBApiServer.getBookByISBN("978-3-16-148410-0")).thenReturn(book);
+        doThrow(new IllegalStateException("DB down")).when(mockDBApiServer).borrowBook("978-3-16-148410-0", "123456789012");
+        testCache.getBookByISBN("978-3-16-148410-0");
+        // Act
+        assertThrows(IllegalStateException.class, () -> testCache.borrowBook("978-3-16-148410-0", "123456789012"));
+        testCache.getBookByISBN("978-3-16-148410-0");
+        // Verify
+        verify(mockDBApiServer, times(2)).getBookByISBN("978-3-16-148410-0");
+    }
+
+    @Test
+    void GivenCachedBookAndUser_WhenTtlExpires_ThenOnlyBookReadAgain() {
+        // Mock the behavior
+        when(mockDBApiServer.getBookByISBN("978-3-16-148410-0")).thenReturn(new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien"));
+        when(mockDBApiServer.getUserById("123456789012")).thenReturn(mockUserApiClient);
+        testCache.getBookByISBN("978-3-16-148410-0");
+        testCache.getUserById("123456789012");
+        // Act
+        now += TimeUnit.SECONDS.toNanos(2);
+        testCache.getBookByISBN("978-3-16-148410-0");
+        User user = testCache.getUserById("123456789012");
+        // Assertions
+        assertSame(mockUserApiClient, user);
+        assertEquals(1, testCache.getUserHitCount());
+        // Verify
+        verify(mockDBApiServer, times(2)).getBookByISBN("978-3-16-148410-0");
+        verify(mockDBApiServer, times(1)).getUserById("123456789012");
+    }
+
+    @Test
+    void GivenMissingBook_WhengetBookByISBN_ThenNotCached() {
+        // Act
+        assertNull(testCache.getBookByISBN("978-3-16-148410-0"));
+        assertNull(testCache.getBookByISBN("978-3-16-148410-0"));
+        assertNull(testCache.getBookByISBN("invalid"));
+        // Verify
+        verify(mockDBApiServer, times(2)).getBookByISBN("978-3-16-148410-0");
+        verify(mockDBApiServer, times(1)).getBookByISBN("invalid");
+    }
+
+    @Test
+    void GivenSomeCachedBooks_WhengetBooksByISBN_ThenMissesReadInOneBatch() {
+        // Mock the behavior
+        Book rings = new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien");
+        Book hobbit = new Book("978-0-306-40615-7", "The Hobbit", "Tolkien");
+        when(mockDBApiServer.getBookByISBN(rings.getISBN())).thenReturn(rings);
+        when(mockDBApiServer.getBooksByISBN(Arrays.asList(hobbit.getISBN(), "978-1-4028-9462-6")))
+                .thenReturn(Collections.singletonMap(hobbit.getISBN(), hobbit));
+        testCache.getBookByISBN(rings.getISBN());
+        // Act
+        Map<String, Book> books = testCache.getBooksByISBN(Arrays.asList(rings.getISBN(), hobbit.getISBN(), "978-1-4028-9462-6"));
+        // Assertions
+        assertEquals(2, books.size());
+        assertSame(rings, books.get(rings.getISBN()));
+        assertSame(hobbit, books.get(hobbit.getISBN()));
+        assertSame(hobbit, testCache.getBookByISBN(hobbit.getISBN()));
+        // Verify
+        verify(mockDBApiServer, times(1)).getBooksByISBN(anyCollection());
+        verify(mockDBApiServer, never()).getBookByISBN(hobbit.getISBN());
+    }
+
+    @Test
+    void GivenNullDatabase_WhenConstructed_ThenIllegalArgumentException() {
+        // Act
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,
+                () -> new CachingDatabaseService(null, 10, 1000, 10, 1000));
+        assertEquals("Invalid database service.", thrown.getMessage());
+    }
+}
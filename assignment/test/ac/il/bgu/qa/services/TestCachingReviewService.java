@@ -0,0 +1,123 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestCachingReviewService {
+
+    @Mock
+    ReviewService mockReviewApiServer;
+
+    long now;
+    CachingReviewService testCache;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        now = 0;
+        testCache = new CachingReviewService(mockReviewApiServer, 2, 1000, 100, () -> now);
+    }
+
+    @Test
+    void GivenCachedReviews_WhengetReviewsForBook_ThenBackendCalledOnce() {
+        // Mock the behavior
+        when(mockReviewApiServer.getReviewsForBook("978-3-16-148410-0")).thenReturn(Arrays.asList("review 1", "review 2"));
+        // Act
+        List<String> first = testCache.getReviewsForBook("978-3-16-148410-0");
+        List<String> second = testCache.getReviewsForBook("978-3-16-148410-0");
+        // Assertions
+        assertEquals(Arrays.asList("review 1", "review 2"), second);
+        assertSame(first, second);
+        assertEquals(1, testCache.getHitCount());
+        assertEquals(1, testCache.getMissCount());
+        // Verify
+        verify(mockReviewApiServer, times(1)).getReviewsForBook("978-3-16-148410-0");
+    }
+
+    @Test
+    void GivenExpiredReviews_WhengetReviewsForBook_ThenBackendCalledAgain() {
+        // Mock the behavior
+        when(mockReviewApiServer.getReviewsForBook("978-3-16-148410-0")).thenReturn(Collections.singletonList("review 1"));
+        // Act
+        testCache.getReviewsForBook("978-3-16-148410-0");
+        now += TimeUnit.MILLISECONDS.toNanos(1000);
+        testCache.getReviewsForBook("978-3-16-148410-0");
+        // Verify
+        verify(mockReviewApiServer, times(2)).getReviewsForBook("978-3-16-148410-0");
+        assertEquals(1, testCache.getEvictionCount());
+    }
+
+    @Test
+    void GivenNoReviews_WhengetReviewsForBook_ThenCachedForNegativeTtl() {
+        // Mock the behavior
+        when(mockReviewApiServer.getReviewsForBook("978-3-16-148410-0")).thenReturn(null);
+        // Act
+        assertTrue(testCache.getReviewsForBook("978-3-16-148410-0").isEmpty());
+        now += TimeUnit.MILLISECONDS.toNanos(50);
+        assertTrue(testCache.getReviewsForBook("978-3-16-148410-0").isEmpty());
+        now += TimeUnit.MILLISECONDS.toNanos(50);
+        testCache.getReviewsForBook("978-3-16-148410-0");
+        // Verify
+        verify(mockReviewApiServer, times(2)).getReviewsForBook("978-3-16-148410-0");
+    }
+
+    @Test
+    void GivenFullCache_WhengetReviewsForBook_ThenLeastRecentlyUsedEvicted() {
+        // Mock the behavior
+        when(mockReviewApiServer.getReviewsForBook(anyString())).thenReturn(Collections.singletonList("review"));
+        // Act
+        testCache.getReviewsForBook("978-3-16-148410-0");
+        testCache.getReviewsForBook("978-0-306-40615-7");
+        testCache.getReviewsForBook("978-3-16-148410-0");
+        testCache.getReviewsForBook("978-1-4028-9462-6");
+        testCache.getReviewsForBook("978-3-16-148410-0");
+        testCache.getReviewsForBook("978-0-306-40615-7");
+        // Verify
+        verify(mockReviewApiServer, times(1)).getReviewsForBook("978-3-16-148410-0");
+        verify(mockReviewApiServer, times(2)).getReviewsForBook("978-0-306-40615-7");
+        assertEquals(2, testCache.getEvictionCount());
+    }
+
+    @Test
+    void GivenFailingBackend_WhengetReviewsForBook_ThenFailureNotCached() {
+        // Mock the behavior
+        when(mockReviewApiServer.getReviewsForBook("978-3-16-148410-0"))
+                .thenThrow(new ReviewException("Review service unavailable!"))
+                .thenReturn(Collections.singletonList("review 1"));
+        // Act
+        assertThrows(ReviewException.class, () -> testCache.getReviewsForBook("978-3-16-148410-0"));
+        assertEquals(Collections.singletonList("review 1"), testCache.getReviewsForBook("978-3-16-148410-0"));
+    }
+
+    @Test
+    void GivenPartlyCachedBooks_WhengetReviewsForBooks_ThenMissesFetchedInOneBatch() {
+        // Mock the behavior
+        when(mockReviewApiServer.getReviewsForBook("978-3-16-148410-0")).thenReturn(Collections.singletonList("review 1"));
+        when(mockReviewApiServer.getReviewsForBooks(Collections.singleton("978-0-306-40615-7")))
+                .thenReturn(Collections.singletonMap("978-0-306-40615-7", Collections.singletonList("review 2")));
+        testCache.getReviewsForBook("978-3-16-148410-0");
+        // Act
+        Map<String, List<String>> reviews = testCache.getReviewsForBooks(Arrays.asList("978-3-16-148410-0", "978-0-306-40615-7"));
+        // Assertions
+        assertEquals(Arrays.asList("978-3-16-148410-0", "978-0-306-40615-7"), new ArrayList<>(reviews.keySet()));
+        assertEquals(Collections.singletonList("review 1"), reviews.get("978-3-16-148410-0"));
+        assertEquals(Collections.singletonList("review 2"), reviews.get("978-0-306-40615-7"));
+        assertEquals(Collections.singletonList("review 2"), testCache.getReviewsForBook("978-0-306-40615-7"));
+        // Verify
+        verify(mockReviewApiServer, times(1)).getReviewsForBooks(Collections.singleton("978-0-306-40615-7"));
+        verify(mockReviewApiServer, never()).getReviewsForBook("978-0-306-40615-7");
+    }
+}
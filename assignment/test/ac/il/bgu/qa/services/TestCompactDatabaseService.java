@@ -0,0 +1,100 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCompactDatabaseService {
+
+    @Test
+    void GivenBooks_WhengetBookByISBN_ThenBookRebuiltFromColumns() {
+        // Mock the behavior
+        CompactDatabaseService testDatabase = new CompactDatabaseService(1);
+        Map<String, Book> books = new HashMap<>();
+        books.put("978-3-16-148410-0", new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien"));
+        books.put("978-0-306-40615-7", new Book("978-0-306-40615-7", "The Hobbit", "Tolkien"));
+        // Act
+        testDatabase.addBooks(books);
+        Book book = testDatabase.getBookByISBN("978-3-16-148410-0");
+        // Assertions
+        assertEquals(2, testDatabase.getBookCount());
+        assertEquals("9783161484100", book.getISBN());
+        assertEquals("Lord of the Rings", book.getTitle());
+        assertEquals("Tolkien", book.getAuthor());
+        assertFalse(book.isBorrowed());
+        assertEquals("The Hobbit", testDatabase.getBookByISBN("9780306406157").getTitle());
+        assertNull(testDatabase.getBookByISBN("978-1-4028-9462-6"));
+        assertNull(testDatabase.getBookByISBN("not an ISBN"));
+        assertEquals(2, testDatabase.getBooksByISBN(Arrays.asList("978-3-16-148410-0", "9780306406157", "978-1-4028-9462-6")).size());
+    }
+
+    @Test
+    void GivenBook_WhenborrowBookAndreturnBook_ThenStateKeptByDatabase() {
+        // Mock the behavior
+        CompactDatabaseService testDatabase = new CompactDatabaseService();
+        testDatabase.addBook("978-3-16-148410-0", new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien"));
+        // Act
+        testDatabase.borrowBook("978-3-16-148410-0", "123456789012");
+        // Assertions
+        assertTrue(testDatabase.getBookByISBN("978-3-16-148410-0").isBorrowed());
+        assertEquals("123456789012", testDatabase.getBorrowerId("978-3-16-148410-0"));
+        assertThrows(BookAlreadyBorrowedException.class, () -> testDatabase.borrowBook("978-3-16-148410-0", "123456789013"));
+        // Act
+        testDatabase.returnBook("978-3-16-148410-0");
+        // Assertions
+        assertFalse(testDatabase.getBookByISBN("978-3-16-148410-0").isBorrowed());
+        assertNull(testDatabase.getBorrowerId("978-3-16-148410-0"));
+        assertThrows(BookNotBorrowedException.class, () -> testDatabase.returnBook("978-3-16-148410-0"));
+        assertThrows(BookNotFoundException.class, () -> testDatabase.borrowBook("978-0-306-40615-7", "123456789012"));
+    }
+
+    @Test
+    void GivenManyBooks_WhenaddBook_ThenStorageGrows() {
+        // Mock the behavior
+        CompactDatabaseService testDatabase = new CompactDatabaseService(1);
+        // Act
+        for (int i = 0; i < 1000; i++) {
+            String ISBN = isbn(i);
+            testDatabase.addBook(ISBN, new Book(ISBN, "Title " + i, "Author " + (i % 10)));
+        }
+        // Assertions
+        assertEquals(1000, testDatabase.getBookCount());
+        for (int i = 0; i < 1000; i++) {
+            Book book = testDatabase.getBookByISBN(isbn(i));
+            assertEquals("Title " + i, book.getTitle());
+            assertEquals("Author " + (i % 10), book.getAuthor());
+        }
+    }
+
+    @Test
+    void GivenUser_WhengetUserById_ThenUserReturned() {
+        // Mock the behavior
+        CompactDatabaseService testDatabase = new CompactDatabaseService();
+        User user = new User("Rotem", "123456789012", null);
+        // Act
+        testDatabase.registerUser(user.getId(), user);
+        // Assertions
+        assertSame(user, testDatabase.getUserById("123456789012"));
+        assertNull(testDatabase.getUserById("123456789013"));
+        assertNull(testDatabase.getUserById("invalid"));
+    }
+
+    // Builds a valid ISBN-13 from a number.
+    private static String isbn(int n) {
+        String digits = String.format("978%09d", n);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,54 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestInMemoryDatabaseService {
+
+    InMemoryDatabaseService testDatabase;
+
+    @BeforeEach
+    public void init() {
+        testDatabase = new InMemoryDatabaseService(4);
+    }
+
+    @Test
+    void GivenAddedBook_WhengetBookByISBN_ThenReturnBook() {
+        Book book = new Book("978-3-16-148410-0", "New-Book", "James Bond");
+        testDatabase.addBook(book.getISBN(), book);
+
+        assertSame(book, testDatabase.getBookByISBN("978-3-16-148410-0"));
+        assertNull(testDatabase.getBookByISBN("978-0-306-40615-7"));
+        assertNull(testDatabase.getBookByISBN(null));
+    }
+
+    @Test
+    void GivenRegisteredUser_WhengetUserById_ThenReturnUser() {
+        User user = new User("Noa", "123456789012", Mockito.mock(NotificationService.class));
+        testDatabase.registerUser(user.getId(), user);
+
+        assertSame(user, testDatabase.getUserById("123456789012"));
+        assertNull(testDatabase.getUserById("111111111111"));
+        assertNull(testDatabase.getUserById("123"));
+        assertThrows(IllegalArgumentException.class, () -> testDatabase.registerUser("123", user));
+    }
+
+    @Test
+    void GivenBook_WhenborrowBookAndreturnBook_ThenLedgerUpdated() {
+        Book book = new Book("978-3-16-148410-0", "New-Book", "James Bond");
+        testDatabase.addBook(book.getISBN(), book);
+
+        testDatabase.borrowBook(book.getISBN(), "123456789012");
+        assertTrue(book.isBorrowed());
+        assertEquals("123456789012", testDatabase.getBorrowerId(book.getISBN()));
+
+        testDatabase.returnBook(book.getISBN());
+        assertFalse(book.isBorrowed());
+        assertNull(testDatabase.getBorrowerId(book.getISBN()));
+    }
+}
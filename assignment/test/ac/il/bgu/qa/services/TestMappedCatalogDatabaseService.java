@@ -0,0 +1,69 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMappedCatalogDatabaseService {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void GivenSnapshot_WhengetBookByISBN_ThenBookMaterializedOnce() throws IOException {
+        // Mock the behavior
+        Book borrowed = new Book("978-0-306-40615-7", "The Hobbit", "Tolkien");
+        borrowed.borrow();
+        Path file = directory.resolve("catalog.bin");
+        MappedCatalogDatabaseService.writeSnapshot(file, Arrays.asList(
+                new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien"), borrowed));
+        // Act
+        try (MappedCatalogDatabaseService testDatabase = new MappedCatalogDatabaseService(file)) {
+            Book book = testDatabase.getBookByISBN("978-3-16-148410-0");
+            // Assertions
+            assertEquals(2, testDatabase.getSnapshotBookCount());
+            assertEquals("9783161484100", book.getISBN());
+            assertEquals("Lord of the Rings", book.getTitle());
+            assertEquals("Tolkien", book.getAuthor());
+            assertFalse(book.isBorrowed());
+            assertSame(book, testDatabase.getBookByISBN("9783161484100"));
+            assertTrue(testDatabase.getBookByISBN("978-0-306-40615-7").isBorrowed());
+            assertNull(testDatabase.getBookByISBN("978-1-4028-9462-6"));
+            assertEquals(2, testDatabase.getMaterializedBookCount());
+        }
+    }
+
+    @Test
+    void GivenSnapshot_WhenborrowBookAndaddBook_ThenChangesKeptInMemory() throws IOException {
+        // Mock the behavior
+        Path file = directory.resolve("catalog.bin");
+        MappedCatalogDatabaseService.writeSnapshot(file, Arrays.asList(new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien")));
+        Book added = new Book("978-0-306-40615-7", "The Hobbit", "Tolkien");
+        // Act
+        try (MappedCatalogDatabaseService testDatabase = new MappedCatalogDatabaseService(file)) {
+            testDatabase.borrowBook("978-3-16-148410-0", "123456789012");
+            testDatabase.addBook(added.getISBN(), added);
+            // Assertions
+            assertTrue(testDatabase.getBookByISBN("978-3-16-148410-0").isBorrowed());
+            assertEquals("123456789012", testDatabase.getBorrowerId("978-3-16-148410-0"));
+            assertSame(added, testDatabase.getBookByISBN("9780306406157"));
+        }
+    }
+
+    @Test
+    void GivenInvalidFile_WhenOpened_ThenUncheckedIOException() throws IOException {
+        // Mock the behavior
+        Path file = directory.resolve("catalog.bin");
+        Files.write(file, new byte[]{1, 2, 3});
+        // Act
+        assertThrows(UncheckedIOException.class, () -> new MappedCatalogDatabaseService(file));
+    }
+}
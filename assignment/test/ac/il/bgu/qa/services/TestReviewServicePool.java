@@ -0,0 +1,82 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewServiceUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestReviewServicePool {
+
+    @SuppressWarnings("unchecked")
+    Supplier<ReviewService> mockFactory() {
+        Supplier<ReviewService> factory = mock(Supplier.class);
+        when(factory.get()).thenAnswer(invocation -> mock(ReviewService.class));
+        return factory;
+    }
+
+    @Test
+    void GivenReleasedService_Whenlease_ThenServiceReused() {
+        Supplier<ReviewService> factory = mockFactory();
+        ReviewServicePool testPool = new ReviewServicePool(factory, 2, service -> true, 0);
+
+        ReviewService first = testPool.lease();
+        testPool.release(first);
+        ReviewService second = testPool.lease();
+
+        assertSame(first, second);
+        assertEquals(1, testPool.getCreatedCount());
+        verify(first, never()).close();
+    }
+
+    @Test
+    void GivenInvalidIdleService_Whenlease_ThenServiceReplaced() {
+        Supplier<ReviewService> factory = mockFactory();
+        ReviewServicePool testPool = new ReviewServicePool(factory, 2, service -> false, 0);
+
+        ReviewService first = testPool.lease();
+        testPool.release(first);
+        ReviewService second = testPool.lease();
+
+        assertNotSame(first, second);
+        assertEquals(1, testPool.getDiscardedCount());
+        verify(first, times(1)).close();
+    }
+
+    @Test
+    void GivenInvalidatedService_Whenlease_ThenNewServiceCreated() {
+        Supplier<ReviewService> factory = mockFactory();
+        ReviewServicePool testPool = new ReviewServicePool(factory, 1, service -> true, 0);
+
+        ReviewService first = testPool.lease();
+        testPool.invalidate(first);
+        ReviewService second = testPool.lease();
+
+        assertNotSame(first, second);
+        verify(first, times(1)).close();
+    }
+
+    @Test
+    void GivenAllServicesLeased_Whenlease_ThenReviewServiceUnavailableException() {
+        ReviewServicePool testPool = new ReviewServicePool(mockFactory(), 1, service -> true, 0);
+        testPool.lease();
+
+        ReviewServiceUnavailableException thrown = assertThrows(ReviewServiceUnavailableException.class, testPool::lease);
+        assertEquals("Review service unavailable!", thrown.getMessage());
+    }
+
+    @Test
+    void GivenUnpooledService_Whenrelease_ThenServiceClosed() {
+        ReviewService mockReviewApiServer = mock(ReviewService.class);
+        ReviewServicePool testPool = ReviewServicePool.unpooled(mockReviewApiServer);
+
+        ReviewService leased = testPool.lease();
+        testPool.release(leased);
+
+        assertSame(mockReviewApiServer, leased);
+        assertEquals(0, testPool.getIdleCount());
+        verify(mockReviewApiServer, times(1)).close();
+    }
+}
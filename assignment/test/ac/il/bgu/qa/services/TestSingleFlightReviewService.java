@@ -0,0 +1,130 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TestSingleFlightReviewService {
+
+    @Test
+    void GivenConcurrentFetches_WhengetReviewsForBook_ThenBackendCalledOnce() throws Exception {
+        // Mock the behavior
+        CountDownLatch release = new CountDownLatch(1);
+        ReviewService mockReviewService = mock(ReviewService.class);
+        when(mockReviewService.getReviewsForBook("978-3-16-148410-0")).thenAnswer(invocation -> {
+            release.await();
+            return Arrays.asList("review 1", "review 2");
+        });
+        SingleFlightReviewService testService = new SingleFlightReviewService(mockReviewService);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            // Act
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> testService.getReviewsForBook("978-3-16-148410-0")));
+            }
+            awaitCoalesced(testService, 7);
+            release.countDown();
+            // Assertions
+            for (Future<List<String>> result : results) {
+                assertEquals(Arrays.asList("review 1", "review 2"), result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(0, testService.getInFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+        // Verify
+        verify(mockReviewService, times(1)).getReviewsForBook("978-3-16-148410-0");
+    }
+
+    @Test
+    void GivenFailingFetch_WhengetReviewsForBook_ThenWaitersReceiveReviewException() throws Exception {
+        // Mock the behavior
+        CountDownLatch release = new CountDownLatch(1);
+        ReviewException failure = new ReviewException("Review service down!");
+        ReviewService mockReviewService = mock(ReviewService.class);
+        when(mockReviewService.getReviewsForBook("978-3-16-148410-0")).thenAnswer(invocation -> {
+            release.await();
+            throw failure;
+        });
+        SingleFlightReviewService testService = new SingleFlightReviewService(mockReviewService);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Act
+            Future<?> first = executor.submit(() -> testService.getReviewsForBook("978-3-16-148410-0"));
+            Future<?> second = executor.submit(() -> testService.getReviewsForBook("978-3-16-148410-0"));
+            awaitCoalesced(testService, 1);
+            release.countDown();
+            // Assertions
+            for (Future<?> result : Arrays.asList(first, second)) {
+                Exception thrown = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertSame(failure, thrown.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // Verify
+        verify(mockReviewService, times(1)).getReviewsForBook("978-3-16-148410-0");
+    }
+
+    @Test
+    void GivenCompletedFetch_WhengetReviewsForBook_ThenBackendCalledAgain() {
+        // Mock the behavior
+        ReviewService mockReviewService = mock(ReviewService.class);
+        when(mockReviewService.getReviewsForBook("978-3-16-148410-0")).thenReturn(Collections.singletonList("review 1"));
+        SingleFlightReviewService testService = new SingleFlightReviewService(mockReviewService);
+        // Act
+        testService.getReviewsForBook("978-3-16-148410-0");
+        List<String> reviews = testService.getReviewsForBook("978-3-16-148410-0");
+        // Assertions
+        assertEquals(Collections.singletonList("review 1"), reviews);
+        assertThrows(UnsupportedOperationException.class, () -> reviews.add("review 2"));
+        assertEquals(0, testService.getCoalescedCount());
+        // Verify
+        verify(mockReviewService, times(2)).getReviewsForBook("978-3-16-148410-0");
+    }
+
+    @Test
+    void GivenBooks_WhengetReviewsForBooks_ThenFetchedInOneBatch() {
+        // Mock the behavior
+        ReviewService mockReviewService = mock(ReviewService.class);
+        Map<String, List<String>> fetched = new LinkedHashMap<>();
+        fetched.put("978-3-16-148410-0", Collections.singletonList("review 1"));
+        when(mockReviewService.getReviewsForBooks(anyCollection())).thenReturn(fetched);
+        SingleFlightReviewService testService = new SingleFlightReviewService(mockReviewService);
+        // Act
+        Map<String, List<String>> reviews = testService.getReviewsForBooks(
+                Arrays.asList("978-3-16-148410-0", "978-0-306-40615-7", "978-3-16-148410-0"));
+        // Assertions
+        assertEquals(2, reviews.size());
+        assertEquals(Collections.singletonList("review 1"), reviews.get("978-3-16-148410-0"));
+        assertNull(reviews.get("978-0-306-40615-7"));
+        assertEquals(0, testService.getInFlightCount());
+        // Verify
+        verify(mockReviewService, times(1)).getReviewsForBooks(anyCollection());
+        verify(mockReviewService, never()).getReviewsForBook(anyString());
+    }
+
+    // Waits until the given number of callers joined the fetch in flight.
+    private static void awaitCoalesced(SingleFlightReviewService service, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (service.getCoalescedCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, service.getCoalescedCount());
+    }
+}
@@ -0,0 +1,138 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class TestWalDatabaseService {
+
+    @TempDir
+    Path directory;
+
+    NotificationService mockNotificationApiClient = mock(NotificationService.class);
+
+    WalDatabaseService open() {
+        return new WalDatabaseService(directory, id -> mockNotificationApiClient, 0);
+    }
+
+    @Test
+    void GivenLoggedChanges_WhenReopened_ThenChangesRecovered() {
+        // Act
+        try (WalDatabaseService testDatabase = open()) {
+            testDatabase.addBook("978-3-16-148410-0", new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien"));
+            testDatabase.addBook("978-0-306-40615-7", new Book("978-0-306-40615-7", "The Hobbit", "Tolkien"));
+            testDatabase.registerUser("123456789012", new User("Frodo", "123456789012", mockNotificationApiClient));
+            testDatabase.borrowBook("978-3-16-148410-0", "123456789012");
+            testDatabase.borrowBook("978-0-306-40615-7", "123456789012");
+            testDatabase.returnBook("978-0-306-40615-7");
+        }
+        // Assertions
+        try (WalDatabaseService testDatabase = open()) {
+            assertEquals("Lord of the Rings", testDatabase.getBookByISBN("978-3-16-148410-0").getTitle());
+            assertTrue(testDatabase.getBookByISBN("978-3-16-148410-0").isBorrowed());
+            assertFalse(testDatabase.getBookByISBN("978-0-306-40615-7").isBorrowed());
+            assertEquals("123456789012", testDatabase.getBorrowerId("978-3-16-148410-0"));
+            assertEquals("Frodo", testDatabase.getUserById("123456789012").getName());
+            assertSame(mockNotificationApiClient, testDatabase.getUserById("123456789012").getNotificationService());
+        }
+    }
+
+    @Test
+    void GivenSnapshot_WhenReopened_ThenSnapshotAndLaterChangesRecovered() {
+        // Act
+        try (WalDatabaseService testDatabase = open()) {
+            testDatabase.addBook("978-3-16-148410-0", new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien"));
+            testDatabase.borrowBook("978-3-16-148410-0", "123456789012");
+            testDatabase.snapshot();
+            testDatabase.returnBook("978-3-16-148410-0");
+            testDatabase.addBook("978-0-306-40615-7", new Book("978-0-306-40615-7", "The Hobbit", "Tolkien"));
+            assertEquals(1, testDatabase.getSnapshotCount());
+        }
+        // Assertions
+        try (WalDatabaseService testDatabase = open()) {
+            assertFalse(testDatabase.getBookByISBN("978-3-16-148410-0").isBorrowed());
+            assertNotNull(testDatabase.getBookByISBN("978-0-306-40615-7"));
+        }
+        assertFalse(Files.exists(directory.resolve("wal-1.log")));
+    }
+
+    @Test
+    void GivenTornLastRecord_WhenReopened_ThenEarlierChangesRecovered() throws IOException {
+        // Mock the behavior
+        try (WalDatabaseService testDatabase = open()) {
+            testDatabase.addBook("978-3-16-148410-0", new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien"));
+        }
+        Files.write(directory.resolve("wal-1.log"), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        // Act
+        try (WalDatabaseService testDatabase = open()) {
+            testDatabase.borrowBook("978-3-16-148410-0", "123456789012");
+        }
+        // Assertions
+        try (WalDatabaseService testDatabase = open()) {
+            assertEquals("123456789012", testDatabase.getBorrowerId("978-3-16-148410-0"));
+        }
+    }
+
+    @Test
+    void GivenClosedDatabase_WhenaddBook_ThenIllegalStateException() {
+        // Mock the behavior
+        WalDatabaseService testDatabase = open();
+        testDatabase.close();
+        // Act
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> testDatabase.addBook("978-3-16-148410-0", new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien")));
+        assertEquals("Database closed.", thrown.getMessage());
+    }
+
+    @Test
+    void GivenFailingLog_WhenaddBook_ThenBookNotVisible() {
+        // Mock the behavior
+        WalDatabaseService testDatabase = new WalDatabaseService(directory, id -> mockNotificationApiClient, 0, file -> {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.close();
+            return channel;
+        });
+        // Act
+        assertThrows(UncheckedIOException.class,
+                () -> testDatabase.addBook("978-3-16-148410-0", new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien")));
+        // Assertions
+        assertNull(testDatabase.getBookByISBN("978-3-16-148410-0"));
+        assertThrows(UncheckedIOException.class,
+                () -> testDatabase.borrowBook("978-3-16-148410-0", "123456789012"));
+        assertNull(testDatabase.getBorrowerId("978-3-16-148410-0"));
+        testDatabase.close();
+    }
+
+    @Test
+    void GivenOversizedBook_WhenaddBook_ThenIllegalArgumentExceptionAndLaterChangesRecovered() {
+        // Mock the behavior
+        char[] title = new char[(1 << 20) + 1];
+        Arrays.fill(title, 'a');
+        Book oversized = new Book("978-0-306-40615-7", new String(title), "Tolkien");
+        // Act
+        try (WalDatabaseService testDatabase = open()) {
+            IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class,
+                    () -> testDatabase.addBook("978-0-306-40615-7", oversized));
+            assertEquals("Record too large.", thrown.getMessage());
+            assertNull(testDatabase.getBookByISBN("978-0-306-40615-7"));
+            testDatabase.addBook("978-3-16-148410-0", new Book("978-3-16-148410-0", "Lord of the Rings", "Tolkien"));
+        }
+        // Assertions
+        try (WalDatabaseService testDatabase = open()) {
+            assertNull(testDatabase.getBookByISBN("978-0-306-40615-7"));
+            assertEquals("Lord of the Rings", testDatabase.getBookByISBN("978-3-16-148410-0").getTitle());
+        }
+    }
+}
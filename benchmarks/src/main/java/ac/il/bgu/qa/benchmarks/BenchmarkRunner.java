@@ -0,0 +1,56 @@
+package ac.il.bgu.qa.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the library benchmarks once per thread count, with GC and allocation profiling enabled.
+ * <p>
+ * Usage: {@code java -jar benchmarks.jar [threads=1,4,16] [regular JMH options]}.
+ * Results of every run are written as JSON to {@code jmh-result-<threads>-threads.json},
+ * so they can be compared between versions to catch regressions.
+ */
+public final class BenchmarkRunner {
+
+    // The thread counts used when none are given.
+    private static final int[] DEFAULT_THREADS = {1, 4, Runtime.getRuntime().availableProcessors()};
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        int[] threadCounts = DEFAULT_THREADS;
+        String[] jmhArgs = args;
+        if (args.length > 0 && args[0].startsWith("threads=")) {
+            String[] values = args[0].substring("threads=".length()).split(",");
+            threadCounts = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                threadCounts[i] = Integer.parseInt(values[i].trim());
+            }
+            jmhArgs = new String[args.length - 1];
+            System.arraycopy(args, 1, jmhArgs, 0, jmhArgs.length);
+        }
+
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs);
+        for (int threads : threadCounts) {
+            OptionsBuilder builder = new OptionsBuilder();
+            builder.parent(commandLine);
+            if (commandLine.getIncludes().isEmpty()) {
+                builder.include(BenchmarkRunner.class.getPackage().getName() + ".Library.*Benchmark");
+            }
+            Options options = builder
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + threads + "-threads.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
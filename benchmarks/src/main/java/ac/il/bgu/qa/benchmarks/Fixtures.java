@@ -0,0 +1,133 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the catalogs and stub services shared by the benchmarks.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates the n-th valid ISBN-13, using the "978" prefix and a computed check digit.
+     *
+     * @param n The sequence number of the ISBN, below one billion.
+     * @return A valid 13-digit ISBN.
+     */
+    static String isbn(long n) {
+        String body = "978" + pad(n, 9);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = body.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : digit * 3;
+        }
+        return body + ((10 - (sum % 10)) % 10);
+    }
+
+    /**
+     * Creates the n-th valid 12-digit user Id.
+     *
+     * @param n The sequence number of the user.
+     * @return A valid user Id.
+     */
+    static String userId(long n) {
+        return pad(n, 12);
+    }
+
+    /**
+     * Creates an in-memory database holding the given number of books and users.
+     *
+     * @param catalogSize The number of books and users to add.
+     * @param notifier    The notification service given to every user.
+     * @return The populated database.
+     */
+    static InMemoryDatabaseService populatedDatabase(int catalogSize, NotificationService notifier) {
+        InMemoryDatabaseService database = new InMemoryDatabaseService();
+        populate(database, catalogSize, notifier);
+        return database;
+    }
+
+    /**
+     * Adds the given number of books and users to a database.
+     *
+     * @param database    The database to populate.
+     * @param catalogSize The number of books and users to add.
+     * @param notifier    The notification service given to every user.
+     */
+    static void populate(DatabaseService database, int catalogSize, NotificationService notifier) {
+        for (int i = 0; i < catalogSize; i++) {
+            String isbn = isbn(i);
+            database.addBook(isbn, new Book(isbn, "Title " + i, "Author " + (char) ('A' + i % 26)));
+            String id = userId(i);
+            database.registerUser(id, new User("User " + i, id, notifier));
+        }
+    }
+
+    /**
+     * Creates a review service that always returns the same reviews without any remote call.
+     *
+     * @param reviewCount The number of reviews returned per book.
+     * @return The stub review service.
+     */
+    static ReviewService stubReviewService(int reviewCount) {
+        List<String> reviews = new ArrayList<>(reviewCount);
+        for (int i = 0; i < reviewCount; i++) {
+            reviews.add("Review number " + i + " of a book that was a pleasure to read.");
+        }
+        final List<String> fixed = Collections.unmodifiableList(reviews);
+        return new ReviewService() {
+            @Override
+            public List<String> getReviewsForBook(String ISBN) {
+                return fixed;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Creates a notification service that only records the length of the last message,
+     * so the message cannot be optimized away.
+     *
+     * @return The stub notification service.
+     */
+    static SinkNotificationService stubNotificationService() {
+        return new SinkNotificationService();
+    }
+
+    /**
+     * A notification service that discards messages after recording their length.
+     */
+    static final class SinkNotificationService implements NotificationService {
+
+        // The length of the last message sent, kept volatile so the message is observed.
+        volatile int lastLength;
+
+        @Override
+        public void notifyUser(String userId, String message) {
+            lastLength = message.length();
+        }
+    }
+
+    private static String pad(long n, int width) {
+        String digits = Long.toString(n);
+        StringBuilder sb = new StringBuilder(width);
+        for (int i = digits.length(); i < width; i++) {
+            sb.append('0');
+        }
+        return sb.append(digits).toString();
+    }
+}
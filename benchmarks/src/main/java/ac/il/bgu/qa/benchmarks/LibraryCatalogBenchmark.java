@@ -0,0 +1,76 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding books and registering users.
+ * These operations grow the database, so each iteration runs a fixed batch of calls
+ * against a freshly populated database instead of running for a fixed time.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = LibraryCatalogBenchmark.BATCH_SIZE)
+@Measurement(iterations = 10, batchSize = LibraryCatalogBenchmark.BATCH_SIZE)
+@Fork(1)
+public class LibraryCatalogBenchmark {
+
+    // The number of calls made by every thread in a single iteration.
+    static final int BATCH_SIZE = 50_000;
+
+    // The sequence numbers of new books and users start above every catalog size.
+    static final int FIRST_NEW_ENTRY = 10_000_000;
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"1000", "100000"})
+        int catalogSize;
+
+        Fixtures.SinkNotificationService notifier;
+        Library library;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            notifier = Fixtures.stubNotificationService();
+            library = new Library(Fixtures.populatedDatabase(catalogSize, notifier), Fixtures.stubReviewService(1));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class NewEntries {
+
+        Book[] books;
+        User[] users;
+        int cursor;
+
+        @Setup(Level.Iteration)
+        public void setUp(Catalog catalog, ThreadParams threads) {
+            int first = FIRST_NEW_ENTRY + threads.getThreadIndex() * BATCH_SIZE;
+            books = new Book[BATCH_SIZE];
+            users = new User[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                String isbn = Fixtures.isbn(first + i);
+                books[i] = new Book(isbn, "New Title " + i, "New Author");
+                String id = Fixtures.userId(first + i);
+                users[i] = new User("New User " + i, id, catalog.notifier);
+            }
+            cursor = 0;
+        }
+    }
+
+    @Benchmark
+    public void addBook(Catalog catalog, NewEntries entries) {
+        catalog.library.addBook(entries.books[entries.cursor++]);
+    }
+
+    @Benchmark
+    public void registerUser(Catalog catalog, NewEntries entries) {
+        catalog.library.registerUser(entries.users[entries.cursor++]);
+    }
+}
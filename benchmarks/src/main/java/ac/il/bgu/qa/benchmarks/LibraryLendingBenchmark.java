@@ -0,0 +1,102 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.services.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures borrowing and returning books.
+ * Every benchmark thread works on its own slice of the catalog, so measured operations never fail
+ * because another thread holds the same book. The borrow benchmark returns the book after each call,
+ * and the return benchmark borrows it before each call, both through the library and outside the
+ * measured time, so every invocation starts from the same state of the books, the database and the
+ * library's index of borrowed books.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryLendingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"1000", "100000"})
+        int catalogSize;
+
+        InMemoryDatabaseService database;
+        Library library;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            database = Fixtures.populatedDatabase(catalogSize, Fixtures.stubNotificationService());
+            library = new Library(database, Fixtures.stubReviewService(1));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Slice {
+
+        String[] isbns;
+        String userId;
+        int cursor;
+        // The book of the current invocation.
+        String isbn;
+
+        @Setup(Level.Trial)
+        public void setUp(Catalog catalog, ThreadParams threads) {
+            int size = Math.max(1, catalog.catalogSize / threads.getThreadCount());
+            int offset = (threads.getThreadIndex() * size) % catalog.catalogSize;
+            isbns = new String[size];
+            for (int i = 0; i < size; i++) {
+                isbns[i] = Fixtures.isbn(offset + i);
+            }
+            userId = Fixtures.userId(offset);
+        }
+
+        void next() {
+            isbn = isbns[cursor];
+            cursor = (cursor + 1 == isbns.length) ? 0 : cursor + 1;
+        }
+    }
+
+    // A book of the slice that is not borrowed, and is returned again after the invocation.
+    @State(Scope.Thread)
+    public static class FreeBook {
+
+        @Setup(Level.Invocation)
+        public void setUp(Slice slice) {
+            slice.next();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown(Catalog catalog, Slice slice) {
+            catalog.library.returnBook(slice.isbn);
+        }
+    }
+
+    // A book of the slice that is borrowed by the slice's user before the invocation.
+    @State(Scope.Thread)
+    public static class BorrowedBook {
+
+        @Setup(Level.Invocation)
+        public void setUp(Catalog catalog, Slice slice) {
+            slice.next();
+            catalog.library.borrowBook(slice.isbn, slice.userId);
+        }
+    }
+
+    @Benchmark
+    public void borrowBook(Catalog catalog, Slice slice, FreeBook book) {
+        catalog.library.borrowBook(slice.isbn, slice.userId);
+    }
+
+    @Benchmark
+    public void returnBook(Catalog catalog, Slice slice, BorrowedBook book) {
+        catalog.library.returnBook(slice.isbn);
+    }
+}
@@ -0,0 +1,56 @@
+package ac.il.bgu.qa.benchmarks;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read paths of the library: fetching a book and notifying a user with its reviews.
+ * Every invocation picks a random book and user from the catalog.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryReadBenchmark {
+
+    @Param({"1000", "100000"})
+    int catalogSize;
+
+    @Param({"10"})
+    int reviewCount;
+
+    Library library;
+    String[] isbns;
+    String[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = new Library(
+                Fixtures.populatedDatabase(catalogSize, Fixtures.stubNotificationService()),
+                Fixtures.stubReviewService(reviewCount));
+        isbns = new String[catalogSize];
+        userIds = new String[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            isbns[i] = Fixtures.isbn(i);
+            userIds[i] = Fixtures.userId(i);
+        }
+    }
+
+    @Benchmark
+    public Book getBookByISBN() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return library.getBookByISBN(isbns[random.nextInt(catalogSize)], userIds[random.nextInt(catalogSize)]);
+    }
+
+    @Benchmark
+    public void notifyUserWithBookReviews() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        library.notifyUserWithBookReviews(isbns[random.nextInt(catalogSize)], userIds[random.nextInt(catalogSize)]);
+    }
+}